@@ -0,0 +1,92 @@
+import java.io.*;
+import java.rmi.*;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import jmud.*;
+
+/**
+ * The server's side of jmud.bench.Fixture.  It is in the default package
+ * with the server's classes, so it can use the parts of them that aren't
+ * remote methods.
+ **/
+public class MudFixture implements jmud.bench.Fixture {
+	/** Start a new MUD, with the named entrance */
+	public RemoteMudServer newMud(String mudname, String entrance) throws Exception {
+		return new MudServer(mudname, "bench", entrance, "The way in.");
+	}
+
+	/**
+	 * Add a place to a MUD, using the constructor MudWorldFile uses, which
+	 * takes the tables as they are and doesn't announce itself.
+	 **/
+	public RemoteMudPlace newPlace(RemoteMudServer mud, String name, String description,
+	                               Map<String,String> things) throws Exception {
+		MudServer server = (MudServer) mud;
+		LinkedHashMap<String,MudText> t = new LinkedHashMap<String,MudText>();
+		for (Map.Entry<String,String> e : things.entrySet())
+			t.put(e.getKey(), MudDescriptions.share(e.getValue()));
+		MudPlace place = new MudPlace(server, name, description,
+		                              new LinkedHashMap<String,Object>(), t);
+		server.setPlaceName(place, name);
+		return place;
+	}
+
+	/**
+	 * Make an exit by changing the table in place, which is only safe while
+	 * nobody else can see it.
+	 **/
+	public void link(RemoteMudPlace from, String exit, RemoteMudPlace to) {
+		((MudPlace) from).exits.put(exit, to);
+	}
+
+	/** Make a session whose connection only counts what is written to it */
+	public RemoteMudPerson newSession(RemoteMudServer mud, final AtomicLong heard) {
+		return new MudSession((MudServer) mud) {
+			boolean write(byte[] bytes) {
+				heard.incrementAndGet();
+				return true;
+			}
+			void disconnect() {}
+		};
+	}
+
+	/** Send a message to everyone in a place */
+	public void tellEveryone(RemoteMudPlace place, String message) {
+		((MudPlace) place).tellEveryone(message);
+	}
+
+	/** Capture a snapshot of the MUD, and write it in this thread */
+	public void save(RemoteMudServer mud, File f, boolean compact) throws IOException {
+		MudSnapshot.capture((MudServer) mud).write(f, compact);
+	}
+
+	/** Read a MUD back from a file */
+	public RemoteMudServer restore(File f) throws Exception {
+		return MudServer.load(f);
+	}
+
+	/** Load every place still waiting in a world file */
+	public void loadAll(RemoteMudServer mud) throws Exception {
+		((MudServer) mud).loadAll();
+	}
+
+	/**
+	 * Unexport the server and every place that has been built, and stop the
+	 * broadcaster's threads, so that nothing is left to keep the JVM alive.
+	 **/
+	public void close(RemoteMudServer mud) {
+		MudServer server = (MudServer) mud;
+		for (Iterator i = server.places.values().iterator(); i.hasNext(); )
+			unexport((Remote) i.next());
+		unexport(server);
+		synchronized(server) {
+			if (server.broadcaster != null) server.broadcaster.shutdown();
+		}
+	}
+
+	private static void unexport(Remote r) {
+		try { UnicastRemoteObject.unexportObject(r, true); }
+		catch (NoSuchObjectException e) {}
+	}
+}
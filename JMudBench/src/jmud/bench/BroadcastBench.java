@@ -0,0 +1,67 @@
+package jmud.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jmud.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of the fan-out of one message to everyone in a place of the
+ * given size, who are all either Listeners, told through tell() as a
+ * client would be, or sessions, played over a telnet connection that only
+ * counts the lines it is sent.  tellEveryone() waits until everyone has
+ * the message.
+ *
+ * Run it with "-prof gc" to see what a broadcast allocates: every
+ * recipient shares one MudMessage, which a session sends as bytes encoded
+ * once, so gc.alloc.rate.norm divided by size, the allocation for each
+ * recipient, should be close to nothing.  Messages are not held back to be
+ * batched (jmud.tell.window=0), and nobody is removed from the place for
+ * falling behind (jmud.tell.strikes).
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djmud.tell.window=0", "-Djmud.tell.strikes=2147483647"})
+public class BroadcastBench {
+	@Param({"10", "1000", "10000"})
+	public int size;                        // People in the place
+
+	@Param({"listener", "session"})
+	public String kind;                     // Who they are
+
+	Fixture fixture;                        // Reaches into the server
+	RemoteMudServer mud;                    // The MUD the place is in
+	RemoteMudPlace hall;                    // The place
+	final AtomicLong heard = new AtomicLong();   // Messages delivered so far
+
+	@Setup
+	public void setUp() throws Exception {
+		fixture = Fixture.get();
+		mud = fixture.newMud("bench", "entrance");
+		hall = fixture.newPlace(mud, "hall", "A crowded hall.", new HashMap<String,String>());
+		for (int i=0; i<size; i++) {
+			RemoteMudPerson p = kind.equals("session") ? fixture.newSession(mud, heard)
+			                                           : new Listener(heard);
+			hall.enter(p, "person" + i, null);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.close(mud);
+	}
+
+	/** Send a message, and wait until everyone has it */
+	@Benchmark
+	public long tellEveryone() {
+		long target = heard.get() + size;
+		fixture.tellEveryone(hall, "Listen, everyone, to what I have to say.");
+		long n;
+		while ((n = heard.get()) < target) Thread.yield();
+		return n;
+	}
+}
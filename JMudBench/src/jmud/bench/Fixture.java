@@ -0,0 +1,60 @@
+package jmud.bench;
+
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import jmud.*;
+
+/**
+ * What the benchmarks need from the MUD server.  The server's classes are
+ * in the default package, which can't be imported into a named package
+ * (and JMH won't run benchmarks from the default package), so benchmarks
+ * reach them through this interface, which MudFixture implements.  Once a
+ * world is built, the benchmarks call the places and servers they measure
+ * directly, through RemoteMudPlace and RemoteMudServer, in this process.
+ *
+ * newPlace() and link() build a world without the console messages, the
+ * journal and the copying that building through RemoteMudPlace involves,
+ * so that a million places can be set up in seconds.  They may only be
+ * used before the world is in use.
+ **/
+public interface Fixture {
+	/** Start a new MUD, with the named entrance */
+	RemoteMudServer newMud(String mudname, String entrance) throws Exception;
+
+	/** Add a place holding the specified things to a MUD */
+	RemoteMudPlace newPlace(RemoteMudServer mud, String name, String description,
+	                        Map<String,String> things) throws Exception;
+
+	/** Make an exit from one place of a MUD to another */
+	void link(RemoteMudPlace from, String exit, RemoteMudPlace to);
+
+	/**
+	 * Return a person played over a telnet connection, a MudSession, that
+	 * only counts the lines it would send, in the specified counter
+	 **/
+	RemoteMudPerson newSession(RemoteMudServer mud, AtomicLong heard);
+
+	/** Send a message to everyone in a place, as speak() and go() do */
+	void tellEveryone(RemoteMudPlace place, String message);
+
+	/**
+	 * Write a MUD to a file, as dump() does, but before returning.  The file
+	 * is a world file if compact is true, and a save file if not.
+	 **/
+	void save(RemoteMudServer mud, File f, boolean compact) throws IOException;
+
+	/** Read a MUD back from a file written by save() */
+	RemoteMudServer restore(File f) throws Exception;
+
+	/** Load every place of a MUD restored from a world file */
+	void loadAll(RemoteMudServer mud) throws Exception;
+
+	/** Shut a MUD down, so that it doesn't keep the JVM running */
+	void close(RemoteMudServer mud);
+
+	/** Return the fixture for the server on the classpath */
+	static Fixture get() throws Exception {
+		return (Fixture) Class.forName("MudFixture").newInstance();
+	}
+}
@@ -0,0 +1,21 @@
+package jmud.bench;
+
+import java.util.concurrent.atomic.AtomicLong;
+import jmud.*;
+
+/**
+ * A person who stands in for a client, and only counts the messages they
+ * are told.  It is not exported, so the server delivers to it with a plain
+ * method call, and what is measured is the server's own work.
+ **/
+public class Listener implements RemoteMudPerson {
+	final AtomicLong heard;     // Shared by everyone listening together
+
+	public Listener(AtomicLong heard) { this.heard = heard; }
+
+	public String getDescription() { return "Someone listening."; }
+
+	public void tell(String message) { heard.incrementAndGet(); }
+
+	public void tellBatch(String[] messages) { heard.addAndGet(messages.length); }
+}
@@ -0,0 +1,100 @@
+package jmud.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jmud.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of the methods of MudPlace that players call all the time,
+ * called in this process, in a place holding the given number of people
+ * and as many things.  Everyone in the place is a Listener.
+ *
+ * speak(), go() and enter()/exit() only hand their messages to the
+ * broadcaster, so they measure the caller's side, until the place's queue
+ * fills and callers have to wait for deliveries.  tellEveryone() measures
+ * the whole fan-out: it waits until everyone in the place has been told.
+ * Messages are not held back to be batched (jmud.tell.window=0), and
+ * nobody is removed from the place for falling behind (jmud.tell.strikes).
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djmud.tell.window=0", "-Djmud.tell.strikes=2147483647"})
+public class PlaceBench {
+	@Param({"1", "10", "100", "1000", "10000"})
+	public int size;                        // People, and things, in the place
+
+	Fixture fixture;                        // Reaches into the server
+	RemoteMudServer mud;                    // The MUD the place is in
+	RemoteMudPlace hall, kitchen;           // The place, and one next to it
+	Listener walker;                        // Someone in the place who moves
+	Listener guest;                         // Someone who comes and goes
+	String someone, something;              // Names to look up
+	final AtomicLong heard = new AtomicLong();   // Messages delivered so far
+
+	@Setup
+	public void setUp() throws Exception {
+		fixture = Fixture.get();
+		mud = fixture.newMud("bench", "entrance");
+		Map<String,String> things = new LinkedHashMap<String,String>();
+		for (int i=0; i<size; i++) things.put("thing" + i, "Thing number " + i + ".");
+		hall = fixture.newPlace(mud, "hall", "A crowded hall.", things);
+		kitchen = fixture.newPlace(mud, "kitchen", "An empty kitchen.",
+		                           new HashMap<String,String>());
+		fixture.link(hall, "north", kitchen);
+		fixture.link(kitchen, "south", hall);
+		walker = new Listener(heard);
+		hall.enter(walker, "walker", null);
+		for (int i=1; i<size; i++) hall.enter(new Listener(heard), "person" + i, null);
+		guest = new Listener(heard);
+		someone = (size > 1) ? "person" + (size / 2) : "walker";
+		something = "thing" + (size / 2);
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.close(mud);
+	}
+
+	@Benchmark
+	public RemoteMudPerson getPerson() throws Exception {
+		return hall.getPerson(someone);
+	}
+
+	@Benchmark
+	public String examineThing() throws Exception {
+		return hall.examineThing(something);
+	}
+
+	@Benchmark
+	public void speak() throws Exception {
+		hall.speak(walker, "Hello, everyone.");
+	}
+
+	@Benchmark
+	public void enterExit() throws Exception {
+		hall.enter(guest, "guest", "comes in.");
+		hall.exit(guest, "goes out.");
+	}
+
+	/** Go to the kitchen, and come back */
+	@Benchmark
+	public RemoteMudPlace go() throws Exception {
+		hall.go(walker, "north");
+		return kitchen.go(walker, "south");
+	}
+
+	/** Send a message, and wait until everyone has it */
+	@Benchmark
+	public long tellEveryone() {
+		long target = heard.get() + size;
+		fixture.tellEveryone(hall, "Listen!");
+		long n;
+		while ((n = heard.get()) < target) Thread.yield();
+		return n;
+	}
+}
@@ -0,0 +1,90 @@
+package jmud.bench;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import jmud.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of saving a whole MUD and reading it back, for worlds of the
+ * given number of places, in each file format: "save", the serialized and
+ * compressed MudServer, and "world", the MudWorldFile.  The places form a
+ * tree below the entrance, with ten exits down from each place and one
+ * back up, and each place holds a thing.
+ *
+ * dump writes a snapshot as MudServer.dump() does in the background.
+ * restore reads the file back as MudServer.main() does, which for a world
+ * file only maps it; restoreAll also loads every place.  Each call is
+ * timed once, as they take too long to repeat in a loop; a save file of a
+ * million places takes minutes, and needs the large heap.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Xss64m"})
+public class WorldBench {
+	@Param({"1000", "100000", "1000000"})
+	public int places;                      // Places in the world
+
+	@Param({"save", "world"})
+	public String format;                   // Which kind of file
+
+	Fixture fixture;                        // Reaches into the server
+	RemoteMudServer mud;                    // The world that is written
+	File file;                              // Where it is written
+	boolean compact;                        // Is that a world file?
+	RemoteMudServer restored;               // The world read back, if any
+
+	@Setup
+	public void setUp() throws Exception {
+		fixture = Fixture.get();
+		compact = format.equals("world");
+		mud = fixture.newMud("bench", "entrance");
+		RemoteMudPlace[] tree = new RemoteMudPlace[places];
+		for (int i=0; i<places; i++) {
+			Map<String,String> things = new HashMap<String,String>();
+			things.put("stone", "A stone with " + i + " carved on it.");
+			tree[i] = fixture.newPlace(mud, "place" + i, "Place number " + i + ".", things);
+			RemoteMudPlace up = (i == 0) ? mud.getEntrance() : tree[(i - 1) / 10];
+			fixture.link(up, "down" + ((i == 0) ? 0 : (i - 1) % 10), tree[i]);
+			fixture.link(tree[i], "up", up);
+		}
+		file = File.createTempFile("jmud-bench", compact ? ".world" : ".sav");
+		file.deleteOnExit();
+		fixture.save(mud, file, compact);
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.close(mud);
+		file.delete();
+	}
+
+	/** Shut down the world that was read back, which is garbage now */
+	@TearDown(Level.Invocation)
+	public void closeRestored() {
+		if (restored != null) fixture.close(restored);
+		restored = null;
+	}
+
+	@Benchmark
+	public long dump() throws Exception {
+		fixture.save(mud, file, compact);
+		return file.length();
+	}
+
+	@Benchmark
+	public RemoteMudServer restore() throws Exception {
+		return restored = fixture.restore(file);
+	}
+
+	@Benchmark
+	public RemoteMudServer restoreAll() throws Exception {
+		restored = fixture.restore(file);
+		fixture.loadAll(restored);
+		return restored;
+	}
+}
@@ -26,6 +26,7 @@ public class MudClient {
 	public static void main(String[] args) {
 		try {
             boolean use_gui = false;   // Use a GUI front-end instead of text-only
+            boolean callback = false;  // Export a MudPerson rather than log in
 			String hostname = null;    // Each MUD is uniquely identified by a
 			String mudname = null;     //  host and MUD name.
 			String placename = null;   // Each place w/in a MUD has a unique name
@@ -35,6 +36,8 @@ public class MudClient {
             for (int i=0; i<arg_len; ++i) {
                 if (args[i].compareTo("-g") == 0)
                     use_gui = true;
+                else if (args[i].compareTo("-c") == 0)
+                    callback = true;
                 else if (args[i].compareTo("-h") == 0)
                     hostname = args[(i+1)];
                 else if (args[i].compareTo("-m") == 0)
@@ -63,43 +66,98 @@ public class MudClient {
 		
 			// Greet the user and ask for their name and description.
 			// This relies on getLine() and getMultiLine() defined below.
-			System.out.println("Welcome to " + mudname);
+			out.println("Welcome to " + mudname);
 			String name = getLine("Enter your name: ");
 			String description = getMultiLine("Please describe what " +
 											  "people see when they look at you: ");
 																	    
+			if (name == null || description == null) System.exit(0);   // No input
 			// Define an output stream that the MudPerson object will use to
-			// display messages sent to the user.  We'll use the console.
-            PrintWriter myout = new PrintWriter(new OutputStreamWriter(System.out));
-		
-			// Create a MudPerson object to represent the user in the MUD.
-			// Use the specified name and description and the output stream.
-			MudPerson me = new MudPerson(name, description, myout);
+			// display messages sent to the user.  We'll use the console, which
+			// shows them as soon as they arrive, whatever we are doing.
+            PrintWriter myout = out;
 		
+			// Log in, and have the server keep our messages in an inbox for
+			// us to collect, so that we don't need to export an object of our
+			// own.  A server too old to have inboxes gets a MudPerson object
+			// to represent the user instead, as before.
+			RemoteMudInbox inbox = null;
+			RemoteMudPerson me;
+			if (!callback) {
+				try { inbox = server.login(description); }
+				catch (RemoteException e) { if (!isUnsupported(e)) throw e; }
+			}
+			if (inbox != null) {
+				me = inbox.getPerson();
+				startPolling(inbox, myout);
+			}
+			else me = new MudPerson(name, description, myout);
+
             //if (use_gui)
             //    client = new MudClientShow(server, location, me);
                 
-			// Lower this thread's priority one notch so that broadcast messages
-			// can appear even when we're blocking I/O.  This is necessary
-			// on the Linux platform, but may not be necessary on all platforms.
-			int pri = Thread.currentThread().getPriority();
-			Thread.currentThread().setPriority(pri-1);
-		
 			// Finally, put the MudPerson into the RemoteMudPlace, and start
 			// prompting the user for commands.
             //if (use_gui)
             //    client.runMud();
             //else
-                runMud(location, me);
+                runMud(location, me, name, inbox);
 		}
 		// If anything goes wrong, print a message and exit
 		catch(Exception e) {
-			System.out.println(e);
-			System.out.println("Usage: java MudClient -g -h <host> -m <mud> [-p <place>]");
+			out.println(e);
+			out.println("Usage: java MudClient -g [-c] -h <host> -m <mud> [-p <place>]");
+			console.drain();
 			System.exit(1);
 		}
 	}
-	
+
+	/**
+	 * Return true if a remote call failed because the server doesn't have
+	 * the method at all, as when an old server is asked to log us in.
+	 **/
+	static boolean isUnsupported(RemoteException e) {
+		for (Throwable t = e; t != null; t = t.getCause())
+			if (t instanceof UnmarshalException &&
+			    String.valueOf(t.getMessage()).indexOf("unrecognized method hash") != -1)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Start a thread that collects messages from the inbox and displays
+	 * them.  There is always a poll() waiting on the server, so a message
+	 * appears as soon as it arrives.  The thread ends when the inbox is
+	 * closed.
+	 **/
+	static void startPolling(final RemoteMudInbox inbox, final PrintWriter out) {
+		Thread t = new Thread("jmud-inbox") {
+			public void run() {
+				boolean failing = false;
+				for (;;) {
+					try {
+						String[] messages = inbox.poll(30000);
+						for (int i=0; i<messages.length; i++) out.println(messages[i]);
+						out.flush();
+						failing = false;
+					}
+					catch (NoSuchObjectException e) { return; }   // Logged out
+					catch (RemoteException e) {
+						if (!failing) {
+							out.println("Lost contact with the MUD: " + e);
+							out.flush();
+						}
+						failing = true;
+						try { Thread.sleep(1000); }
+						catch (InterruptedException ie) { return; }
+					}
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+	}
+
 	/**
 	 * The main loop of the MudClient.  It places the person into the 
 	 * place (using the enter() method of RemoteMudPlace).  Then it
@@ -109,23 +167,37 @@ public class MudClient {
 	 **/
 	public static void runMud(RemoteMudPlace entrance, MudPerson me)
 			throws RemoteException {
+		runMud(entrance, me, me.getName(), null);
+	}
+
+	/**
+	 * The same, for a person who may have logged in with an inbox rather
+	 * than being a MudPerson.  The inbox is null if they didn't.
+	 **/
+	public static void runMud(RemoteMudPlace entrance, RemoteMudPerson me,
+	                          String myname, RemoteMudInbox inbox)
+			throws RemoteException {
 		RemoteMudPlace location = entrance;  // The current place
-		String myname = me.getName();        // The person's name
 		String placename = null;             // The name of the current place
 		String mudname = null;               // The name of the mud of that place
+		boolean interpreted = true;          // Does the server run our commands?
+		Hashtable prompts = null;            // The questions its commands ask
+		String promptsOf = null;             // The mud they were fetched from
 		
-		System.out.println(" * Client start......\n");
+		out.println(" * Client start......\n");
 		try {
 			// Enter the MUD
 			location.enter(me, myname, myname + " has entered the MUD.");
-			// Figure out where we are (for the prompt)
-			mudname = location.getServer().getMudName();
-			placename = location.getPlaceName();
-			// Describe the place to the user
-			look(location);
+			// Describe the place to the user, and remember where we are
+			// (for the prompt)
+			PlaceView view = location.look();
+			mudname = view.getMudName();
+			placename = view.getPlaceName();
+			show(view);
 		}
 		catch (Exception e) {
-			System.out.println(e);
+			out.println(e);
+			console.drain();
 			System.exit(1);
 		}
 		
@@ -135,12 +207,79 @@ public class MudClient {
 		// could go wrong each time through.
 		for (;;) {     // Loop until the user types "quit"
 			try {    // catch any exceptions that occur in the loop
-				// pause just a bit before printing the prompt, to give output
-				// generated indirectly by the last command a chance to appear.
-				try { Thread.sleep(200); } catch (InterruptedException e) {}
-				
-				// Display a prompt and get the user's input
+				// Display a prompt and get the user's input.  There's no need to
+				// pause first: messages the last command led to are shown by the
+				// console as they arrive, and the prompt is shown again after them.
+				// At the end of the input, leave the MUD.
 				String line = getLine(mudname + '.' + placename + "> ");
+				if (line == null) line = "quit";
+				
+				// Have the server carry out the command, asking the user any
+				// questions it has first.  A server too old to do that gets
+				// the remote calls for the command made one by one, below.
+				if (interpreted) {
+					try {
+						// The questions each command asks are fetched once for
+						// each MUD, and asked before the command is sent, so that
+						// it takes one call.  A server that can't list them sends
+						// a command's questions back, and is sent it again.
+						if (!mudname.equals(promptsOf)) {
+							try { prompts = location.getServer().getPrompts(); }
+							catch (RemoteException e) {
+								if (!isUnsupported(e)) throw e;
+								prompts = new Hashtable();
+							}
+							promptsOf = mudname;
+						}
+						int sp = line.indexOf(' ');
+						String word = ((sp == -1) ? line : line.substring(0, sp)).toLowerCase();
+						MudPrompts p = (MudPrompts) prompts.get(word);
+						String[] q = (p == null) ? null : p.ask((sp == -1) ? "" : line.substring(sp+1).trim());
+						String[] answers = null;
+						if (q != null) {
+							answers = new String[q.length];
+							for (int n=0; n<q.length && line != null; n++) {
+								answers[n] = p.isLongAnswer(n) ? getMultiLine(q[n]) : getLine(q[n]);
+								if (answers[n] == null) line = null;      // No more input
+							}
+						}
+						MudResult r = location.execute(me, (line == null) ? "quit" : line, answers);
+						q = r.getQuestions();
+						if (q != null) {
+							answers = new String[q.length];
+							for (int n=0; n<q.length && line != null; n++) {
+								answers[n] = r.isLongAnswer(n) ? getMultiLine(q[n]) : getLine(q[n]);
+								if (answers[n] == null) line = null;      // No more input
+							}
+							if (line == null) r = location.execute(me, "quit", null);
+							else r = location.execute(me, line, answers);
+						}
+						if (r.getText() != null) out.println(r.getText());
+						if (r.getView() != null) {
+							PlaceView view = r.getView();
+							location = view.getPlace();
+							mudname = view.getMudName();
+							placename = view.getPlaceName();
+							show(view);
+						}
+						// The server has told an inbox already
+						if (r.getDescription() != null && inbox == null)
+							((MudPerson) me).setDescription(r.getDescription());
+						if (r.isQuit()) {
+							if (inbox != null) {
+								try { inbox.close(); }
+								catch (Exception e) {}
+							}
+							console.drain();
+							System.exit(0);
+						}
+						continue;
+					}
+					catch (RemoteException e) {
+						if (!isUnsupported(e)) throw e;
+						interpreted = false;
+					}
+				}
 				
 				// Break the input into command and an argument that consists
 				// of the rest of the line.  Convert the command to lowercase.
@@ -160,24 +299,25 @@ public class MudClient {
 				if (cmd.equals("look")) look(location);
 				// EXAMINE: Describe a named thing
 				else if (cmd.equals("examine"))
-					System.out.println(location.examineThing(arg));
+					out.println(location.examineThing(arg));
 				// DESCRIBE: Describe a named person
 				else if (cmd.equals("describe")) {
 					try {
 						RemoteMudPerson p = location.getPerson(arg);
-						System.out.println(p.getDescription());
+						out.println(p.getDescription());
 					}
 					catch (RemoteException e) {
-						System.out.println(arg + " is having technical difficulties. " +
+						out.println(arg + " is having technical difficulties. " +
 															 "No description is available.");
 					}
 				}
 				// GO: Go in a named direction
 				else if (cmd.equals("go")) {
-					location = location.go(me, arg);
-					mudname = location.getServer().getMudName();
-					placename = location.getPlaceName();
-					look(location);
+					PlaceView view = location.goAndLook(me, arg);
+					location = view.getPlace();
+					mudname = view.getMudName();
+					placename = view.getPlaceName();
+					show(view);
 				}
 				// SAY: Say something to everyone
 				else if (cmd.equals("say")) location.speak(me, arg);
@@ -191,13 +331,16 @@ public class MudClient {
 						p.tell(myname + " says \"" + msg + "\"");
 					}
 					catch (RemoteException e) {
-						System.out.println(arg + " is having technical difficulties. " +
+						out.println(arg + " is having technical difficulties. " +
 															 "Can't talk to named person.");
 				 	}
 				}
 				// CHANGE: Change my own description
-				else if (cmd.equals("change"))
-					me.setDescription(getMultiLine("Describe yourself for others: "));
+				else if (cmd.equals("change")) {
+					String desc = getMultiLine("Describe yourself for others: ");
+					if (inbox != null) inbox.setDescription(desc);
+					else ((MudPerson) me).setDescription(desc);
+				}
 				// CREATE: Create a new thing in this place
 				else if (cmd.equals("create")) {
 					if (arg.length() == 0)
@@ -234,7 +377,7 @@ public class MudClient {
 					String mud = getLine("What is the name of the MUD on that host?: ");
 					String place = getLine("What is the place name in that MUD?: ");
 					location.linkTo(me, arg, host, mud, place);
-					System.out.println("Don't forget to make a link from there " +
+					out.println("Don't forget to make a link from there " +
 														 "back to here !!");
 				}
 				// DUMP: Save the state of this MUD into the named file, if 
@@ -249,8 +392,12 @@ public class MudClient {
 				else if (cmd.equals("quit")) {
 					try { location.exit(me, myname + " has left."); }
 					catch (Exception e) {}
-					System.out.println("..... Bye .....");
-					System.out.flush();
+					if (inbox != null) {
+						try { inbox.close(); }
+						catch (Exception e) {}
+					}
+					out.println("..... Bye .....");
+					console.drain();
 					System.exit(0);
 				}
 				// HELP: Print out a big help message
@@ -274,45 +421,45 @@ public class MudClient {
 						"dump <filename>: Save server state. Prompts for password\n" +
 						"quit: Leave the MUD\n" + 
 						"help: Display this message";
-					System.out.println(help);
+					out.println(help);
 				}
 				// Otherwise, this is an unrecognized command
-				else System.out.println("Unknown command. Try 'help'.");
+				else out.println("Unknown command. Try 'help'.");
 			}
 			// Handle the many possible types of MudException
 			catch (MudException.MudExceptionBase e) {
 				if (e instanceof MudException.NoSuchThing)
-					System.out.println("There isn't any such thing here.");
+					out.println("There isn't any such thing here.");
 				else if (e instanceof MudException.NoSuchPerson)
-					System.out.println("There isn't anyone by that name here.");
+					out.println("There isn't anyone by that name here.");
 				else if (e instanceof MudException.NoSuchExit)
-					System.out.println("There isn't an exit in that direction.");
+					out.println("There isn't an exit in that direction.");
 				else if (e instanceof MudException.NoSuchPlace)
-					System.out.println("There isn't any such place.");
+					out.println("There isn't any such place.");
 				else if (e instanceof MudException.ExitAlreadyExists)
-					System.out.println("There is already an exit in that direction.");
+					out.println("There is already an exit in that direction.");
 				else if (e instanceof MudException.PlaceAlreadyExists)
-					System.out.println("There is already a place with that name.");
+					out.println("There is already a place with that name.");
 				else if (e instanceof MudException.LinkFailed)
-					System.out.println("That exit is not functioning.");
+					out.println("That exit is not functioning.");
 				else if (e instanceof MudException.BadPassword)
-					System.out.println("Invalid Password.");
+					out.println("Invalid Password.");
 				else if (e instanceof MudException.NotThere)      // shouldn't happen
-					System.out.println("You can't do that when you're not there.");
+					out.println("You can't do that when you're not there.");
 				else if (e instanceof MudException.AlreadyThere)  // shouldn't happen
-					System.out.println("You can't go there; you're already there.");
+					out.println("You can't go there; you're already there.");
 			}
 			// Handle RMI exceptions
 			catch (RemoteException e) {
-				System.out.println("The MUD is having technical difficulties.");
-				System.out.println("Perhaps the server has crashed.");
-				System.out.println(e);
+				out.println("The MUD is having technical difficulties.");
+				out.println("Perhaps the server has crashed.");
+				out.println(e);
 			}
 			// Handle everything else that can go wrong.
 			catch (Exception e) {
-				System.out.println("Syntax or other error:");
-				System.out.println(e);
-				System.out.println("Try using the 'help' command.");
+				out.println("Syntax or other error:");
+				out.println(e);
+				out.println("Try using the 'help' command.");
 			}
 		}
 	}
@@ -321,58 +468,63 @@ public class MudClient {
 	 * Convenience method used in several places in the runMud() method 
 	 * above.  It displays the name and description of the current place
 	 * (including the name of the mud the place is in), and also displays
-	 * the list of things, people, and exits in the current place.
+	 * the list of things, people, and exits in the current place.  It gets
+	 * all of that from the place in a single remote call.
 	 **/
 	public static void look(RemoteMudPlace p) 
 			throws RemoteException, MudException.MudExceptionBase {
-		String mudname = p.getServer().getMudName();  // Mud name
-		String placename = p.getPlaceName();          // Place name
-		String description = p.getDescription();      // Place description
-		Vector things = p.getThings();                // List of things here
-		Vector names = p.getNames();                  // List of people here
-		Vector exits = p.getExits();                  // List of exits from here
+		show(p.look());
+	}
+	
+	/** Display a view of a place that has already been fetched */
+	public static void show(PlaceView view) {
+		List things = view.getThings();               // List of things here
+		List names = view.getNames();                 // List of people here
+		List exits = view.getExits();                 // List of exits from here
 		
 		// Print it all out
-		System.out.println("You are in: " + placename + " of the Mud: " + mudname);
-		System.out.println(description);
-		System.out.print("Things here: ");
+		out.println("You are in: " + view.getPlaceName() +
+		                   " of the Mud: " + view.getMudName());
+		out.println(view.getDescription());
+		out.print("Things here: ");
 		for (int i=0; i<things.size(); i++) {     // Display list of things.
-			if (i > 0) System.out.print(", ");
-			System.out.print(things.elementAt(i));
+			if (i > 0) out.print(", ");
+			out.print(things.get(i));
 		}
-		System.out.print("\nPeople here: ");      
+		out.print("\nPeople here: ");      
 		for (int i=0; i<names.size(); i++) {      // Display list of people.
-			if (i > 0) System.out.print(", ");
-			System.out.print(names.elementAt(i));
+			if (i > 0) out.print(", ");
+			out.print(names.get(i));
 		}
-		System.out.print("\nExits here: ");
+		out.print("\nExits here: ");
 		for (int i=0; i<exits.size(); i++) {      // Display list of exits
-			if (i > 0) System.out.print(", ");
-			System.out.print(exits.elementAt(i));
+			if (i > 0) out.print(", ");
+			out.print(exits.get(i));
 		}
-		System.out.println();                     // Blank line
-		System.out.flush();                       // Make it appear now.
+		out.println();                     // Blank line
+		out.flush();                       // Make it appear now.
 	}
 	
 	/** Reads lines from the console */
-	static BufferedReader in = 
-		new BufferedReader(new InputStreamReader(System.in));
+	// The console reads the user's input and shows everything printed, in
+	// threads of its own, so that neither waits for the other or for the MUD.
+	static final MudConsole console = new MudConsole(System.in, System.out);
+	static final PrintWriter out = new PrintWriter(console, true);
 		
 	/**
 	 * Convenience method for prompting the user and getting a line of input.
 	 * It guarantees that the line is not empty and strips off whitespace
-	 * at the beginning and end of the line.
+	 * at the beginning and end of the line.  It returns null at the end of
+	 * the input.
 	 **/
 	public static String getLine(String prompt) {
-		String line = null;
+		String line;
 		do {                   // Loop until a non-empty line is entered
-			try {
-				System.out.print(prompt);             // display prompt
-				System.out.flush();                   // display right away
-				line = in.readLine();                 // get a line of input
-				if (line != null) line = line.trim(); // strip off whitespace
-			} catch (Exception e) {}                // ignore any errors
-		} while ((line == null) || (line.length() == 0));
+			console.prompt(prompt);               // display prompt
+			line = console.readLine();            // get a line of input
+			if (line == null) return null;        // no more input
+			line = line.trim();                   // strip off whitespace
+		} while (line.length() == 0);
 		return line;
 	}
 	
@@ -380,23 +532,24 @@ public class MudClient {
 	 * Convenience method for getting multi-line input from the user.
 	 * It prompts for the input, displays instructions, and guarantees
 	 * that the input is not empty.  It also allows the user to enter the
-	 * name of a file from which text will be read.
+	 * name of a file from which text will be read.  It returns null at the
+	 * end of the input.
 	 **/
 	public static String getMultiLine(String prompt) {
 		String text = "";
 		for (;;) {    // We'll break out of this loop when we get non-empty input.
 			try {
-				BufferedReader br = in;     // The stream to read from.
-				System.out.println(prompt); // Display the prompt
+				BufferedReader br = null;   // A file to read from, if any.
+				out.println(prompt); // Display the prompt
 				// Display some instructions
-				System.out.println("You can enter multiple lines. " +
+				out.println("You can enter multiple lines. " +
 													 "End with a '.' on a line by itself.\n" +
 													 "Or enter a '<<' followed by a filename");
 				// Make the prompt and instructions appear now.
-				System.out.flush();
+				out.flush();
 				// Read lines
 				String line;
-				while ((line = br.readLine()) != null) {  // Until EOF
+				while ((line = (br == null) ? console.readLine() : br.readLine()) != null) {  // Until EOF
 					if (line.equals(".")) break;            // or until a dot by itself
 					// Or, if a file is specified, start reading from it instead of
 					// from the console.
@@ -408,13 +561,15 @@ public class MudClient {
 					else text += line + "\n";   // Add the line to the collected input
 				}
 				// If we got at least one line, return it.  Otherwise, chastise the
-				// user and go back to the prompt and the instructions.
+				// user and go back to the prompt and the instructions, unless
+				// there's no more input to be had.
 				if (text.length() > 0) return text;
-				else System.out.println("Please enter at least one line.");
+				else if (line == null && br == null) return null;
+				else out.println("Please enter at least one line.");
 			}
 			// If there were errors, for example an IO error reading a file,
 			// display the error and loop again, displaying prompt and instructions.
-			catch (Exception e) { System.out.println(e); }
+			catch (Exception e) { out.println(e); }
 		}
 	}
 }
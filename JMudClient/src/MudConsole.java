@@ -0,0 +1,133 @@
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * MudConsole is the terminal of a MudClient.  Reading what the user types,
+ * making the remote calls for it, and showing what comes back from the MUD
+ * are done by separate threads, so none of them waits for the others:
+ *
+ * A reader thread reads lines from the input as soon as they are typed,
+ * or as fast as a script supplies them, and queues them for readLine().
+ * The client's own thread takes them one at a time and makes the calls.
+ * A renderer thread is the only one that writes to the screen.  Text
+ * written to the console from any thread, whether command results or
+ * messages the MUD tells us, is queued for it when it is flushed, so a
+ * message arriving in the middle of a command never has to wait for the
+ * command, and the user never has to wait for a pause to see it.
+ *
+ * If a prompt is showing when a message arrives, the message is shown on
+ * a line of its own and the prompt is shown again after it.
+ **/
+public class MudConsole extends Writer {
+	static final String EOF = new String("end of input");  // Queued after the last line
+	static final Object ANSWERED = new Object();  // Queued when a line is taken
+
+	final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();  // Typed
+	final BlockingQueue<Object> output = new LinkedBlockingQueue<Object>(); // To show
+	final StringBuilder pending = new StringBuilder();  // Written, not yet flushed
+	final PrintStream screen;                     // Where output goes
+	String showing;                               // The prompt on the screen, if any
+
+	/** A prompt to show, which stays on the screen until a line is typed */
+	static class Prompt {
+		final String text;
+		Prompt(String text) { this.text = text; }
+	}
+
+	/** Start reading from the input and writing to the screen */
+	public MudConsole(InputStream in, PrintStream screen) {
+		this.screen = screen;
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+		Thread r = new Thread("jmud-input") {
+			public void run() {
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) lines.add(line);
+				}
+				catch (IOException e) {}
+				lines.add(EOF);
+			}
+		};
+		r.setDaemon(true);
+		r.start();
+		Thread w = new Thread("jmud-output") {
+			public void run() {
+				for (;;) {
+					try { render(output.take()); }
+					catch (InterruptedException e) { return; }
+				}
+			}
+		};
+		w.setDaemon(true);
+		w.start();
+	}
+
+	/** Show one item from the output queue.  Only the renderer calls this. */
+	void render(Object o) {
+		if (o == ANSWERED) showing = null;
+		else if (o instanceof Prompt) {
+			showing = ((Prompt) o).text;
+			screen.print(showing);
+		}
+		else if (o instanceof CountDownLatch) ((CountDownLatch) o).countDown();
+		else if (showing != null) {
+			// Put the message under the prompt, and the prompt under that
+			screen.print("\n" + o);
+			screen.print(showing);
+		}
+		else screen.print(o);
+		screen.flush();
+	}
+
+	public void write(char[] c, int offset, int length) {
+		synchronized(lock) { pending.append(c, offset, length); }
+	}
+
+	/** Queue everything written so far to be shown */
+	public void flush() {
+		String text;
+		synchronized(lock) {
+			if (pending.length() == 0) return;
+			text = pending.toString();
+			pending.setLength(0);
+		}
+		output.add(text);
+	}
+
+	public void close() { flush(); }
+
+	/** Show a prompt, after everything written before it */
+	public void prompt(String text) {
+		flush();
+		output.add(new Prompt(text));
+	}
+
+	/**
+	 * Return the next line typed, waiting for one if need be, or null at
+	 * the end of the input.
+	 **/
+	public String readLine() {
+		boolean interrupted = false;
+		String line;
+		for (;;) {
+			try { line = lines.take(); break; }
+			catch (InterruptedException e) { interrupted = true; }
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		output.add(ANSWERED);  // The prompt has had its answer
+		if (line == EOF) {
+			lines.add(EOF);    // For whoever asks next
+			return null;
+		}
+		return line;
+	}
+
+	/** Wait until everything written so far is on the screen */
+	public void drain() {
+		flush();
+		CountDownLatch done = new CountDownLatch(1);
+		output.add(done);
+		try { done.await(5, TimeUnit.SECONDS); }
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+	}
+}
@@ -0,0 +1,350 @@
+import java.rmi.*;
+import java.rmi.server.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import jmud.*;
+
+/**
+ * MudSwarm is a load generator.  It lets loose a swarm of bots on a MUD,
+ * each of which plays like a MudClient user with nobody at the keyboard:
+ * it enters the MUD, and then, after thinking for a while, carries out a
+ * command chosen at random from a weighted mix of look, go, say, do,
+ * create and destroy, and so on until the run is over.  Every bot is a
+ * RemoteMudPerson, so the server calls it back to tell it things, just as
+ * it calls a MudPerson.
+ *
+ * MudSwarm reports how many of each command were carried out, how many
+ * failed, and percentiles of how long they took.  It also reports the
+ * broadcast lag: what bots say and do carries the time it was sent, and
+ * the bots that are told it record how long it took to reach them.  All
+ * the bots run in this process, so they share a clock.
+ *
+ * The bots' commands are carried out by a pool of threads, so the number
+ * of bots is limited by memory and by the server, not by threads.  If
+ * every pool thread is waiting for the server, bots wait to be run, and
+ * the run isn't putting the load on the server that it appears to.
+ **/
+public class MudSwarm {
+	// The commands bots carry out, and their default weights in the mix
+	static final String[] COMMANDS = { "look", "go", "say", "do", "create", "destroy" };
+	static final int LOOK = 0, GO = 1, SAY = 2, DO = 3, CREATE = 4, DESTROY = 5;
+	static final String MIX = "look=40,go=25,say=20,do=5,create=5,destroy=5";
+	static final String STAMP = " ~";       // Comes before the time a message was sent
+
+	final RemoteMudPlace start;             // Where the bots enter the MUD
+	final int[] mix = new int[COMMANDS.length];  // The weight of each command
+	int totalWeight;                        // The sum of the weights
+	final long think;                       // Mean milliseconds between commands
+	final String thinking;                  // "exp", "uniform" or "fixed"
+	final ScheduledThreadPoolExecutor pool; // Carries out the bots' commands
+	final MudHistogram[] latency = new MudHistogram[COMMANDS.length];  // Microseconds
+	final AtomicLong[] errors = new AtomicLong[COMMANDS.length];  // RemoteExceptions
+	final AtomicLong[] misses = new AtomicLong[COMMANDS.length];  // MudExceptions
+	final MudHistogram lag = new MudHistogram();  // Broadcast lag, microseconds
+	volatile boolean stopping;              // Set when the run is over
+
+	/**
+	 * Prepare a swarm that will enter the MUD at the specified place.  The
+	 * mix is a list of command=weight pairs, and the time bots think between
+	 * commands is distributed as specified, with the specified mean.
+	 **/
+	public MudSwarm(RemoteMudPlace start, String mix, long think, String thinking, int threads) {
+		this.start = start;
+		this.think = think;
+		this.thinking = thinking;
+		StringTokenizer t = new StringTokenizer(mix, ",");
+		while (t.hasMoreTokens()) {
+			String pair = t.nextToken().trim();
+			int i = pair.indexOf('=');
+			int c = Arrays.asList(COMMANDS).indexOf(pair.substring(0, i).trim());
+			if (c < 0) throw new IllegalArgumentException("unknown command in mix: " + pair);
+			this.mix[c] = Integer.parseInt(pair.substring(i + 1).trim());
+		}
+		for (int c=0; c<COMMANDS.length; c++) {
+			totalWeight += this.mix[c];
+			latency[c] = new MudHistogram();
+			errors[c] = new AtomicLong();
+			misses[c] = new AtomicLong();
+		}
+		if (totalWeight <= 0) throw new IllegalArgumentException("empty mix");
+		pool = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+			int count;
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "jmud-swarm-" + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Open the specified number of places around the start, each with an
+	 * exit named "out" back to it, so that the bots have somewhere to go.
+	 * Places left by an earlier run are used again.
+	 **/
+	public void build(int rooms) throws Exception {
+		Bot builder = new Bot("builder");
+		start.enter(builder, builder.name, null);
+		try {
+			for (int i=1; i<=rooms; i++) {
+				try {
+					start.createPlace(builder, "room" + i, "out", "swarm-room-" + i,
+					                  "Room " + i + ", built for the swarm.\n");
+				}
+				catch (MudException.ExitAlreadyExists e) {}
+				catch (MudException.PlaceAlreadyExists e) {}
+			}
+		}
+		finally {
+			start.exit(builder, null);
+			UnicastRemoteObject.unexportObject(builder, true);
+		}
+	}
+
+	/**
+	 * Let the specified number of bots loose for the specified number of
+	 * seconds, printing progress every ten seconds, and return the bots.
+	 * Each bot enters the MUD after thinking once, so they don't all arrive
+	 * at the same moment.
+	 **/
+	public List<Bot> run(int bots, int seconds) throws Exception {
+		List<Bot> swarm = new ArrayList<Bot>();
+		for (int i=1; i<=bots; i++) {
+			Bot b = new Bot("bot" + i);
+			swarm.add(b);
+			pool.schedule(b, thinkTime(), TimeUnit.MILLISECONDS);
+		}
+		long began = System.currentTimeMillis();
+		long done = 0;
+		for (int now=0; now<seconds; ) {
+			int then = now;
+			now = Math.min(now + 10, seconds);
+			Thread.sleep(Math.max(0, began + now * 1000L - System.currentTimeMillis()));
+			long before = done;
+			done = total();
+			System.out.println(now + "s: " + done + " commands, " +
+			                   (done - before) / (now - then) + "/s, broadcast lag p99 " +
+			                   millis(lag.getPercentile(99)) + " ms");
+		}
+		stopping = true;
+		pool.shutdown();
+		pool.awaitTermination(30, TimeUnit.SECONDS);
+		return swarm;
+	}
+
+	/** Take the bots out of the MUD, and stop listening for their messages */
+	public void leave(List<Bot> swarm) {
+		for (Bot b : swarm) {
+			try { if (b.location != null) b.location.exit(b, null); }
+			catch (Exception e) {}
+			try { UnicastRemoteObject.unexportObject(b, true); }
+			catch (NoSuchObjectException e) {}
+		}
+	}
+
+	/** Return how many commands have been carried out */
+	long total() {
+		long n = 0;
+		for (int c=0; c<COMMANDS.length; c++)
+			n += latency[c].getCount() + errors[c].get() + misses[c].get();
+		return n;
+	}
+
+	/** Print the throughput and latencies of each command, and the broadcast lag */
+	public void report(int seconds) {
+		System.out.println();
+		System.out.println(String.format("%-9s %9s %7s %7s %9s %9s %9s %9s %9s %9s %9s",
+		                   "command", "count", "errors", "misses", "ops/s",
+		                   "mean", "p50", "p90", "p99", "p99.9", "max"));
+		for (int c=0; c<COMMANDS.length; c++)
+			line(COMMANDS[c], latency[c], errors[c].get(), misses[c].get(), seconds);
+		line("lag", lag, 0, 0, seconds);
+		System.out.println("(times in milliseconds; lag is from say or do to another bot's tell)");
+	}
+
+	private static void line(String name, MudHistogram h, long errors, long misses, int seconds) {
+		System.out.println(String.format("%-9s %9d %7d %7d %9.1f %9s %9s %9s %9s %9s %9s",
+		                   name, h.getCount(), errors, misses,
+		                   (double) h.getCount() / Math.max(1, seconds),
+		                   millis((long) h.getMean()), millis(h.getPercentile(50)),
+		                   millis(h.getPercentile(90)), millis(h.getPercentile(99)),
+		                   millis(h.getPercentile(99.9)), millis(h.getMax())));
+	}
+
+	private static String millis(long micros) {
+		return String.format("%.2f", micros / 1000.0);
+	}
+
+	/** Return how long a bot thinks before its next command */
+	long thinkTime() {
+		Random r = ThreadLocalRandom.current();
+		if (thinking.equals("fixed")) return think;
+		if (thinking.equals("uniform")) return (long) (r.nextDouble() * 2 * think);
+		return (long) (-Math.log(1 - r.nextDouble()) * think);   // Exponential
+	}
+
+	/** Choose a command from the mix */
+	int pick() {
+		int w = ThreadLocalRandom.current().nextInt(totalWeight);
+		int c = 0;
+		while (w >= mix[c]) w -= mix[c++];
+		return c;
+	}
+
+	/**
+	 * One simulated player.  It remembers what it saw the last time it
+	 * looked, to choose where to go and what to destroy.
+	 **/
+	class Bot extends UnicastRemoteObject implements RemoteMudPerson, Runnable {
+		private static final long serialVersionUID = 1L;
+		final String name;
+		RemoteMudPlace location;             // Where it is, once it has entered
+		List exits = new ArrayList();        // The exits it last saw
+		List things = new ArrayList();       // The things it last saw
+		int created;                         // How many things it has made
+
+		Bot(String name) throws RemoteException {
+			this.name = name;
+		}
+
+		/** Carry out one command, and think about the next */
+		public void run() {
+			if (stopping) return;
+			int c = (location == null) ? LOOK : pick();
+			long began = System.nanoTime();
+			try {
+				if (location == null) {
+					start.enter(this, name, "arrives.");
+					location = start;
+				}
+				perform(c);
+				latency[c].record((System.nanoTime() - began) / 1000);
+			}
+			catch (MudException.NotThere e) {
+				// Removed for falling behind: come in again next time
+				misses[c].incrementAndGet();
+				location = null;
+			}
+			catch (MudException.MudExceptionBase e) { misses[c].incrementAndGet(); }
+			catch (RemoteException e) { errors[c].incrementAndGet(); }
+			if (!stopping) pool.schedule(this, thinkTime(), TimeUnit.MILLISECONDS);
+		}
+
+		private void perform(int c) throws RemoteException, MudException.MudExceptionBase {
+			Random r = ThreadLocalRandom.current();
+			switch (c) {
+			case LOOK:
+				see(location.look());
+				break;
+			case GO:
+				if (exits.isEmpty()) see(location.look());
+				else see(location.goAndLook(this, (String) exits.get(r.nextInt(exits.size()))));
+				break;
+			case SAY:
+				location.speak(this, "Hello" + STAMP + System.nanoTime());
+				break;
+			case DO:
+				location.act(this, "waves" + STAMP + System.nanoTime());
+				break;
+			case CREATE:
+				String thing = name + "-thing" + (++created);
+				location.createThing(this, thing, "Something " + name + " made.\n");
+				things.add(thing);
+				break;
+			case DESTROY:
+				if (things.isEmpty()) throw new MudException.NoSuchThing();
+				location.destroyThing(this, (String) things.remove(r.nextInt(things.size())));
+				break;
+			}
+		}
+
+		/** Remember what was seen */
+		private void see(PlaceView view) {
+			location = view.getPlace();
+			exits = view.getExits();
+			things = new ArrayList(view.getThings());
+		}
+
+		public String getDescription() throws RemoteException {
+			return "A bot, one of a swarm.";
+		}
+
+		public void tell(String message) throws RemoteException { heard(message); }
+
+		public void tellBatch(String[] messages) throws RemoteException {
+			for (int i=0; i<messages.length; i++) heard(messages[i]);
+		}
+
+		/** Record the lag of a message sent by another bot */
+		private void heard(String message) {
+			int i = message.lastIndexOf(STAMP);
+			if (i < 0 || message.startsWith(name + ":") || message.startsWith(name + " "))
+				return;
+			try {
+				long sent = Long.parseLong(message.substring(i + STAMP.length()));
+				lag.record((System.nanoTime() - sent) / 1000);
+			}
+			catch (NumberFormatException e) {}
+		}
+	}
+
+	/**
+	 * The load generator program.  It takes the same -h, -m and -p arguments
+	 * as MudClient, to find the MUD and the place to enter it at, and
+	 *   -bots <n>        how many bots to let loose (default 100)
+	 *   -seconds <n>     how long to run for (default 60)
+	 *   -think <ms>      the mean time a bot thinks between commands (default 1000)
+	 *   -dist <d>        how thinking times are distributed: "exp" (the
+	 *                    default), "uniform" or "fixed"
+	 *   -mix <mix>       the weight of each command, by default
+	 *                    look=40,go=25,say=20,do=5,create=5,destroy=5
+	 *   -rooms <n>       open this many places for the bots to go to (default 10)
+	 *   -threads <n>     how many threads carry out commands (default 64)
+	 **/
+	public static void main(String[] args) {
+		try {
+			String hostname = "localhost", mudname = null, placename = null;
+			String mix = MIX, dist = "exp";
+			int bots = 100, seconds = 60, rooms = 10, threads = 64;
+			long think = 1000;
+			for (int i=0; i<args.length-1; i++) {
+				if (args[i].equals("-h")) hostname = args[++i];
+				else if (args[i].equals("-m")) mudname = args[++i];
+				else if (args[i].equals("-p")) placename = args[++i];
+				else if (args[i].equals("-bots")) bots = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-seconds")) seconds = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-think")) think = Long.parseLong(args[++i]);
+				else if (args[i].equals("-dist")) dist = args[++i];
+				else if (args[i].equals("-mix")) mix = args[++i];
+				else if (args[i].equals("-rooms")) rooms = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+			}
+			if (mudname == null) throw new IllegalArgumentException("no MUD name");
+
+			// The bots only call the server, and load no code from it, so
+			// unlike MudClient this doesn't need a security manager.
+			RemoteMudServer server =
+				(RemoteMudServer) Naming.lookup("rmi://" + hostname + "/" +
+				                                MudException.mudPrefix + "." + mudname);
+			RemoteMudPlace start = (placename == null) ? server.getEntrance()
+			                                           : server.getNamedPlace(placename);
+
+			MudSwarm swarm = new MudSwarm(start, mix, think, dist, threads);
+			if (rooms > 0) swarm.build(rooms);
+			System.out.println("Running " + bots + " bots for " + seconds + " seconds...");
+			List<Bot> all = swarm.run(bots, seconds);
+			swarm.report(seconds);
+			swarm.leave(all);
+			System.exit(0);
+		}
+		catch (Exception e) {
+			System.out.println(e);
+			System.out.println("Usage: java MudSwarm [-h <host>] -m <mud> [-p <place>] " +
+			                   "[-bots <n>] [-seconds <n>] [-think <ms>] " +
+			                   "[-dist exp|uniform|fixed] [-mix <mix>] [-rooms <n>] " +
+			                   "[-threads <n>]");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package jmud;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.rmi.server.UID;
+
+/**
+ * An InboxPerson stands for a person who logged in with
+ * RemoteMudServer.login(), and is what their client passes to the methods
+ * of RemoteMudPlace.  Unlike a MudPerson it is not a remote object, but is
+ * copied from call to call, and copies of the same person are equal.
+ * Messages told to it go to the person's RemoteMudInbox.
+ *
+ * On the server that holds the inbox, the place a person enters is given
+ * the inbox itself to deliver to, so messages are queued without a remote
+ * call.  Anywhere else (on another server, or in another client telling
+ * the person something), they go to the inbox through its stub.
+ **/
+public final class InboxPerson implements RemoteMudPerson, Serializable {
+	private final UID id;                     // Which person this is
+	private final RemoteMudInbox inbox;       // Where their messages go
+	private transient RemoteMudPerson local;  // The inbox, if it is in this VM
+	
+	public InboxPerson(RemoteMudInbox inbox) {
+		this.id = new UID();
+		this.inbox = inbox;
+	}
+	
+	/**
+	 * Deliver this person's messages to the specified object, which must be
+	 * their inbox, rather than through the inbox's stub.  Called by the
+	 * server that holds the inbox.
+	 **/
+	public void attach(RemoteMudPerson inbox) { local = inbox; }
+	
+	/** Return the person's inbox */
+	public RemoteMudInbox getInbox() { return inbox; }
+	
+	private RemoteMudPerson target() { return (local != null) ? local : inbox; }
+	
+	/** Return a full description of the person */
+	public String getDescription() throws RemoteException {
+		return target().getDescription();
+	}
+	
+	/** Deliver a message to the person */
+	public void tell(String message) throws RemoteException {
+		target().tell(message);
+	}
+	
+	/** Deliver several messages to the person, in order */
+	public void tellBatch(String[] messages) throws RemoteException {
+		target().tellBatch(messages);
+	}
+	
+	public boolean equals(Object o) {
+		return (o instanceof InboxPerson) && id.equals(((InboxPerson) o).id);
+	}
+	
+	public int hashCode() { return id.hashCode(); }
+	
+	/** This constant is a version number for serialization */
+	private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,37 @@
+package jmud;
+
+import java.io.Serializable;
+
+/**
+ * A MudMatch is one of the answers RemoteMudServer.find() gives: a place,
+ * or a thing in a place, whose name or description has the words that were
+ * looked for.  The better it matches, the higher its score, and the answers
+ * come best first.  A MudMatch never changes once it has been made.
+ **/
+public final class MudMatch implements Serializable {
+	private final String placename;   // The place found, or where the thing is
+	private final String thing;       // The thing found, or null for the place
+	private final double score;       // How well it matches
+
+	public MudMatch(String placename, String thing, double score) {
+		this.placename = placename;
+		this.thing = thing;
+		this.score = score;
+	}
+
+	/** Return the name of the place, or of the place the thing is in */
+	public String getPlaceName() { return placename; }
+
+	/** Return the name of the thing, or null if the place itself matched */
+	public String getThing() { return thing; }
+
+	/** Return how well this matches.  Only the order of scores means anything */
+	public double getScore() { return score; }
+
+	public String toString() {
+		return (thing == null) ? placename : thing + " in " + placename;
+	}
+
+	/** This constant is a version number for serialization */
+	private static final long serialVersionUID = 1L;
+}
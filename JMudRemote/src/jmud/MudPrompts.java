@@ -0,0 +1,46 @@
+package jmud;
+
+import java.io.Serializable;
+
+/**
+ * MudPrompts are the questions a command asks before it is run, as
+ * RemoteMudServer.getPrompts() lists them.  A client that has them asks
+ * the questions itself, and sends the command to RemoteMudPlace.execute()
+ * with the answers, so the command takes one call rather than two.  A
+ * question may include %s, which is replaced by the command's argument.
+ * MudPrompts never change once they have been made.
+ **/
+public final class MudPrompts implements Serializable {
+	private final String needs;           // What the argument is, if it must be given
+	private final String[] questions;     // What to ask before running the command
+	private final boolean[] longAnswers;  // Which answers may take several lines
+
+	public MudPrompts(String needs, String[] questions, boolean[] longAnswers) {
+		this.needs = needs;
+		this.questions = (questions == null) ? new String[0] : questions.clone();
+		this.longAnswers = (longAnswers == null) ? null : longAnswers.clone();
+	}
+
+	/**
+	 * Return the questions to ask before running the command with the
+	 * specified argument, or null if there are none.  There are none if the
+	 * command needs an argument and hasn't got one, since execute() will
+	 * refuse it anyway.
+	 **/
+	public String[] ask(String arg) {
+		if (questions.length == 0) return null;
+		if (needs != null && arg.length() == 0) return null;
+		String[] q = new String[questions.length];
+		for (int i=0; i<q.length; i++) q[i] = questions[i].replace("%s", arg);
+		return q;
+	}
+
+	/**
+	 * Return true if the answer to question i may take several lines, such
+	 * as a description
+	 **/
+	public boolean isLongAnswer(int i) { return longAnswers != null && longAnswers[i]; }
+
+	/** This constant is a version number for serialization */
+	private static final long serialVersionUID = 1L;
+}
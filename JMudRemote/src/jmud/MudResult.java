@@ -0,0 +1,59 @@
+package jmud;
+
+import java.io.Serializable;
+
+/**
+ * A MudResult is what RemoteMudPlace.execute() returns for a command: the
+ * text to show the person, and what else the client has to know about.
+ * If the command moved the person, or looked around, it carries a view of
+ * the place they are in now, which is where their next command goes.  If
+ * the command needs more input and was sent without the answers (see
+ * MudPrompts), it carries the questions to ask instead, and the client
+ * calls execute() again with the same command and the answers.  A
+ * MudResult never changes once it has been made.
+ **/
+public final class MudResult implements Serializable {
+	private final String text;            // What to show, or null
+	private final PlaceView view;         // Where the person is now, if that was looked at
+	private final String[] questions;     // What to ask before running the command
+	private final boolean[] longAnswers; // Which answers may take several lines
+	private final String description;     // The person's new description, if changed
+	private final boolean quit;           // Has the person left the MUD?
+
+	public MudResult(String text, PlaceView view, String[] questions,
+	                 boolean[] longAnswers, String description, boolean quit) {
+		this.text = text;
+		this.view = view;
+		this.questions = questions;
+		this.longAnswers = longAnswers;
+		this.description = description;
+		this.quit = quit;
+	}
+
+	/** Return a result that is only text */
+	public MudResult(String text) { this(text, null, null, null, null, false); }
+
+	/** Return the text to show, one message per line, or null if there is none */
+	public String getText() { return text; }
+
+	/** Return a view of the place the person is in, or null if it wasn't looked at */
+	public PlaceView getView() { return view; }
+
+	/** Return the questions to ask, or null if the command has been run */
+	public String[] getQuestions() { return (questions == null) ? null : questions.clone(); }
+
+	/**
+	 * Return true if the answer to question i may take several lines, such
+	 * as a description
+	 **/
+	public boolean isLongAnswer(int i) { return longAnswers != null && longAnswers[i]; }
+
+	/** Return the description the person now has, or null if it didn't change */
+	public String getDescription() { return description; }
+
+	/** Return true if the person has left the MUD */
+	public boolean isQuit() { return quit; }
+
+	/** This constant is a version number for serialization */
+	private static final long serialVersionUID = 1L;
+}
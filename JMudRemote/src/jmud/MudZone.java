@@ -0,0 +1,49 @@
+package jmud;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * A MudZone carries the places of a zone (see RemoteMudDirectory) from the
+ * server that serves it to the server that is taking it over.  Each place
+ * is its name, its description, and its tables of things and exits.  The
+ * destination of an exit is either the name of another place in the zone,
+ * or a "url@placename" string for a place on another server, which
+ * includes the places the zone's old server keeps.  The people in the
+ * places are not carried: the old server moves them across itself.
+ **/
+public class MudZone implements Serializable {
+	public final String name;       // The zone
+	public final String from;       // The url of the server it comes from
+	public final ArrayList<String> places = new ArrayList<String>();
+	public final ArrayList<String> descriptions = new ArrayList<String>();
+	public final ArrayList<LinkedHashMap<String,String>> things =
+		new ArrayList<LinkedHashMap<String,String>>();
+	public final ArrayList<LinkedHashMap<String,String>> exits =
+		new ArrayList<LinkedHashMap<String,String>>();
+
+	public MudZone(String name, String from) {
+		this.name = name;
+		this.from = from;
+	}
+
+	/** Add a place to the zone */
+	public void add(String place, String description,
+	                LinkedHashMap<String,String> things,
+	                LinkedHashMap<String,String> exits) {
+		this.places.add(place);
+		this.descriptions.add(description);
+		this.things.add(things);
+		this.exits.add(exits);
+	}
+
+	/** Return the zone of a place, which is its name up to the first '/' */
+	public static String of(String placename) {
+		int slash = placename.indexOf('/');
+		return (slash < 0) ? "" : placename.substring(0, slash);
+	}
+
+	/** This constant is a version number for serialization */
+	private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,66 @@
+package jmud;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A PlaceView is a snapshot of everything a person sees when they look
+ * around a place: the name of the MUD and of the place, its description,
+ * and the things, people and exits that are there.  The server assembles
+ * it in a single remote call, so a client can describe a place without
+ * a separate round trip for each piece.  It also carries the place itself,
+ * so that moving and looking can be done in one call too.
+ * A PlaceView never changes once it has been made.
+ **/
+public final class PlaceView implements Serializable {
+	private final RemoteMudPlace place;     // The place this is a view of
+	private final String mudname;           // The MUD that contains the place
+	private final String placename;         // The name of the place
+	private final String description;       // Its description
+	private final String[] things;          // Names of things there
+	private final String[] names;           // Names of people there
+	private final String[] exits;           // Names of exits from there
+
+	public PlaceView(RemoteMudPlace place, String mudname, String placename,
+	                 String description, Vector things, Vector names,
+	                 Vector exits) {
+		this.place = place;
+		this.mudname = mudname;
+		this.placename = placename;
+		this.description = description;
+		this.things = (String[]) things.toArray(new String[things.size()]);
+		this.names = (String[]) names.toArray(new String[names.size()]);
+		this.exits = (String[]) exits.toArray(new String[exits.size()]);
+	}
+
+	/** Return the place this is a view of */
+	public RemoteMudPlace getPlace() { return place; }
+
+	/** Return the name of the MUD that contains the place */
+	public String getMudName() { return mudname; }
+
+	/** Return the name of the place */
+	public String getPlaceName() { return placename; }
+
+	/** Return the description of the place */
+	public String getDescription() { return description; }
+
+	/** Return the names of the things in the place */
+	public List<String> getThings() { return list(things); }
+
+	/** Return the names of the people in the place */
+	public List<String> getNames() { return list(names); }
+
+	/** Return the names of the exits from the place */
+	public List<String> getExits() { return list(exits); }
+
+	private static List<String> list(String[] a) {
+		return Collections.unmodifiableList(Arrays.asList(a));
+	}
+
+	/** This constant is a version number for serialization */
+	private static final long serialVersionUID = 1L;
+}
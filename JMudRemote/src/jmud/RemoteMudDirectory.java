@@ -0,0 +1,35 @@
+package jmud;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.Hashtable;
+
+/**
+ * This interface defines the methods exported by the directory of a MUD
+ * that is split across several servers.  The places of such a MUD are
+ * divided into zones: the zone of a place is the part of its name before
+ * the first '/', so "castle/hall" is in zone "castle", and a name with no
+ * '/' is in the zone "".  Each zone is served by one server, and the
+ * directory records which, as the url the server is registered under.
+ * A server that is asked for a place in a zone it doesn't serve asks the
+ * directory where to find it.
+ **/
+public interface RemoteMudDirectory extends Remote {
+	/** Return the url of the server that serves a zone, or null if none does */
+	public String getOwner(String zone) throws RemoteException;
+	
+	/**
+	 * Make the server registered under the url the owner of a zone, unless
+	 * some server already is.  Returns the url of the owner either way.
+	 **/
+	public String claim(String zone, String url) throws RemoteException;
+	
+	/**
+	 * Hand a zone from one server to another, as long as it still belongs
+	 * to the first.  Returns false if it doesn't.
+	 **/
+	public boolean transfer(String zone, String from, String to) throws RemoteException;
+	
+	/** Return a table of every zone, and the url of the server that serves it */
+	public Hashtable getZones() throws RemoteException;
+}
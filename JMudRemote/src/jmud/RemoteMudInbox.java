@@ -0,0 +1,33 @@
+package jmud;
+
+import java.rmi.RemoteException;
+
+/**
+ * This interface defines the methods exported by an inbox, which holds the
+ * messages for a person who logged in with RemoteMudServer.login().  The
+ * inbox lives on the server, and the client collects its messages by
+ * calling poll() over and over, so the client never has to export a
+ * remote object of its own or accept a connection from the server.
+ * An inbox is also the person it holds messages for, so other servers can
+ * deliver to it with tell().
+ **/
+public interface RemoteMudInbox extends RemoteMudPerson {
+	/**
+	 * Return the messages that have arrived since the last call, waiting up
+	 * to the specified number of milliseconds for one to arrive if there are
+	 * none yet.  Returns an empty array if none arrived in time.
+	 **/
+	public String[] poll(long timeout) throws RemoteException;
+	
+	/**
+	 * Return the person to pass to the methods of RemoteMudPlace, such as
+	 * enter() and go()
+	 **/
+	public RemoteMudPerson getPerson() throws RemoteException;
+	
+	/** Change the person's description */
+	public void setDescription(String description) throws RemoteException;
+	
+	/** Log out: stop collecting messages, and discard the inbox */
+	public void close() throws RemoteException;
+}
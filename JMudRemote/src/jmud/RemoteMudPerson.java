@@ -13,4 +13,10 @@ public interface RemoteMudPerson extends Remote {
 	
 	/** Deliver a message to the person */
 	public void  tell(String message) throws RemoteException;
+	
+	/**
+	 * Deliver several messages to the person, in order, in one call.
+	 * Servers fall back to tell() for clients that don't have this method.
+	 **/
+	public void tellBatch(String[] messages) throws RemoteException;
 }
@@ -34,6 +34,12 @@ import java.util.Vector;
  	/** Get the names of all ways out of here */
  	public Vector getExits() throws RemoteException;
  	
+ 	/**
+ 	 * Get the name of the MUD, and the name, description, things, people
+ 	 * and exits of this place, all at once
+ 	 **/
+ 	public PlaceView look() throws RemoteException;
+ 	
  	/** Get the RemoteMudPerson object for the named person */
  	public RemoteMudPerson getPerson(String name)
  			throws RemoteException, MudException.NoSuchPerson;
@@ -45,6 +51,17 @@ import java.util.Vector;
  	/** Use the named exit */
  	public RemoteMudPlace go(RemoteMudPerson who, String direction)
  			throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchExit, MudException.LinkFailed;
+ 	
+ 	/** Use the named exit, and look at the new place, in one call */
+ 	public PlaceView goAndLook(RemoteMudPerson who, String direction)
+ 			throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchExit, MudException.LinkFailed;
+ 		
+ 	/**
+ 	 * Go to the named place on the same server, by the fewest exits, in
+ 	 * one step, and look at it
+ 	 **/
+ 	public PlaceView travel(RemoteMudPerson who, String placename)
+ 			throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchPlace;
  		
  	/** Send a message of the form "David: hi everyone" */
  	public void speak(RemoteMudPerson speaker, String msg)
@@ -54,6 +71,10 @@ import java.util.Vector;
  	public void act(RemoteMudPerson speaker, String msg)
  			throws RemoteException, MudException.NotThere;
  		
+ 	/** Send a message that is heard in the places nearby, as well as here */
+ 	public void shout(RemoteMudPerson speaker, String msg)
+ 			throws RemoteException, MudException.NotThere;
+ 		
  	/** Add a new thing in this place */
  	public void createThing(RemoteMudPerson who, String name,
  													String description)
@@ -102,5 +123,18 @@ import java.util.Vector;
  	 * This method should not be directly visible to the player.
  	 **/
  	 public RemoteMudServer getServer() throws RemoteException;
+ 	
+ 	/**
+ 	 * Carry out a command typed by a person here, such as "go north" or
+ 	 * "say hello", and return everything the client needs to show for it,
+ 	 * so that every command is a single call.  A client asks the questions
+ 	 * of a command that needs more input first, from the server's
+ 	 * getPrompts(), and sends the answers with the line.  Sent without
+ 	 * them, the command returns its questions, and is called again with the
+ 	 * same line and the answers.  MUD exceptions are reported in the
+ 	 * result's text rather than thrown.
+ 	 **/
+ 	public MudResult execute(RemoteMudPerson who, String command, String[] answers)
+ 			throws RemoteException;
  }
  
@@ -3,6 +3,7 @@ package jmud;
 import java.io.IOException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Hashtable;
 
 
 /**
@@ -19,6 +20,13 @@ public interface RemoteMudServer extends Remote {
 		public RemoteMudPlace getNamedPlace(String name)
 				throws RemoteException, MudException.NoSuchPlace;
 		
+		/**
+		 * Log in without a callback object.  Returns an inbox on this server
+		 * that collects the person's messages until the client polls for
+		 * them.  The inbox's getPerson() is the person to enter the MUD with.
+		 **/
+		public RemoteMudInbox login(String description) throws RemoteException;
+		
 		/**
 		 * Dump the state of the server to a file so that it can be restored later
 		 * All places, and their exits and things are dumped, but the "people"
@@ -26,4 +34,35 @@ public interface RemoteMudServer extends Remote {
 		 **/
 		 public void dump(String password, String filename)
 	 			throws RemoteException, MudException.BadPassword, IOException;
+		
+		/**
+		 * Return the places and things on this server whose names or
+		 * descriptions have every word in the query, best first.
+		 **/
+		public MudMatch[] find(String query) throws RemoteException;
+		
+		/**
+		 * Return the MudPrompts of every command that asks questions before
+		 * it is run, by the command's name, so that a client can ask them
+		 * before it sends the command to RemoteMudPlace.execute().
+		 **/
+		public Hashtable getPrompts() throws RemoteException;
+		
+		/**
+		 * Move a zone of a MUD that is split across servers (see
+		 * RemoteMudDirectory) from this server to the server registered under
+		 * the url, along with everybody in it.  The password is the MUD's, and
+		 * both servers must have the same one.  Throws NoSuchPlace if this
+		 * server doesn't serve the zone.
+		 **/
+		public void moveZone(String password, String zone, String url)
+				throws RemoteException, MudException.BadPassword, MudException.NoSuchPlace;
+		
+		/**
+		 * Take over a zone that another server is moving here, and return its
+		 * new places, by name.  Only moveZone() should call this.  Throws
+		 * PlaceAlreadyExists if this server already has a place of the zone.
+		 **/
+		public Hashtable acceptZone(String password, MudZone zone)
+				throws RemoteException, MudException.BadPassword, MudException.PlaceAlreadyExists;
 	}
@@ -0,0 +1,259 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import jmud.*;
+
+/**
+ * This class is the server-wide delivery service for broadcast messages.
+ * Rather than starting a new thread for every message sent to a place, each
+ * MudPlace owns a Lane, and submits its messages to that lane.  All of the
+ * lanes share a small, fixed pool of worker threads.  A lane hands its
+ * messages to the pool one at a time, so the messages sent to one place are
+ * always delivered in the order they were sent, while different places are
+ * delivered in parallel.
+ *
+ * The pool is configured with system properties:
+ *   jmud.broadcast.threads  the number of worker threads (default 2 per CPU)
+ *   jmud.broadcast.queue    the most messages that may wait in one place
+ *                           before the rejection policy applies (default 1000)
+ *   jmud.broadcast.policy   what to do with a message when its place is full:
+ *                           "block" makes the sender wait for room (default),
+ *                           "discard" drops the new message, and
+ *                           "discard-oldest" drops the oldest waiting message.
+ *
+ * A lane's worker doesn't talk to the people in the place itself.  It posts
+ * the message to each recipient's MudOutbox, and a separate pool of courier
+ * threads makes the tell() calls, so the recipients are served concurrently
+ * and one stalled client holds up nobody but themselves.  The couriers are
+ * configured with:
+ *   jmud.broadcast.couriers the most courier threads (default 64)
+ *   jmud.tell.timeout       milliseconds a tell() may take before the
+ *                           recipient earns a strike (default 5000)
+ *   jmud.tell.strikes       strikes in a row before the recipient is removed
+ *                           from the place with exit() (default 3); a courier
+ *                           still in their tell() then is replaced by another
+ *   jmud.tell.queue         the most messages that may wait for one person;
+ *                           the oldest is dropped beyond that (default 500)
+ *   jmud.tell.window        milliseconds a message waits for others to be
+ *                           batched with it (default 5, 0 to send at once)
+ *   jmud.tell.batch         the most messages in one tellBatch() (default 64)
+ * Worker threads are platform daemon threads; the project targets Java 8,
+ * which has no virtual threads.
+ **/
+public class MudBroadcaster {
+	/** The rejection policies understood by jmud.broadcast.policy */
+	public static final String BLOCK = "block";
+	public static final String DISCARD = "discard";
+	public static final String DISCARD_OLDEST = "discard-oldest";
+
+	/** How many messages a lane delivers before letting other lanes run */
+	static final int FAIRNESS = 32;
+
+	final ThreadPoolExecutor pool;          // The shared worker threads
+	final int queueDepth;                   // Most messages waiting per place
+	final String policy;                    // What to do when a place is full
+	final AtomicInteger pending = new AtomicInteger();  // Messages waiting
+	final AtomicLong dropped = new AtomicLong();        // Messages discarded
+
+	final ThreadPoolExecutor couriers;      // The threads that call tell()
+	final int courierThreads;               // Couriers, not counting those written off
+	int abandoned;                          // Couriers written off, still in tell()
+	final ScheduledExecutorService watchdog;  // Times deadlines and batches
+	final long tellTimeout = Long.getLong("jmud.tell.timeout", 5000);
+	final int maxStrikes = Integer.getInteger("jmud.tell.strikes", 3);
+	final int outboxDepth = Integer.getInteger("jmud.tell.queue", 500);
+	final long tellWindow = Long.getLong("jmud.tell.window", 5);
+	final int tellBatch = Math.max(1, Integer.getInteger("jmud.tell.batch", 64));
+	final Map<RemoteMudPerson, MudOutbox> outboxes =   // One for each person
+		new WeakHashMap<RemoteMudPerson, MudOutbox>();
+	final Set<MudOutbox> sending =                     // Outboxes in tell()
+		Collections.newSetFromMap(new ConcurrentHashMap<MudOutbox, Boolean>());
+
+	/** Create a broadcaster configured from the system properties */
+	public MudBroadcaster() {
+		this(Integer.getInteger("jmud.broadcast.threads",
+		                        2 * Runtime.getRuntime().availableProcessors()),
+		     Integer.getInteger("jmud.broadcast.queue", 1000),
+		     System.getProperty("jmud.broadcast.policy", BLOCK));
+	}
+
+	/** Create a broadcaster with an explicit configuration */
+	public MudBroadcaster(int threads, int queueDepth, String policy) {
+		if (threads < 1 || queueDepth < 1)
+			throw new IllegalArgumentException("threads and queue must be positive");
+		if (!policy.equals(BLOCK) && !policy.equals(DISCARD) &&
+		    !policy.equals(DISCARD_OLDEST))
+			throw new IllegalArgumentException("unknown broadcast policy: " + policy);
+		this.queueDepth = queueDepth;
+		this.policy = policy;
+		// The pool's own queue holds at most one task per place that has
+		// messages waiting, so it does not need a bound of its own.
+		this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+		                                   new LinkedBlockingQueue<Runnable>(),
+		                                   new WorkerFactory("jmud-broadcast-"));
+		// Couriers come and go with demand.  They are bounded by the number
+		// of recipients with messages waiting, since an outbox only ever
+		// occupies one courier.
+		int max = courierThreads = Integer.getInteger("jmud.broadcast.couriers", 64);
+		this.couriers = new ThreadPoolExecutor(max, max, 30L, TimeUnit.SECONDS,
+		                                       new LinkedBlockingQueue<Runnable>(),
+		                                       new WorkerFactory("jmud-courier-"));
+		this.couriers.allowCoreThreadTimeOut(true);
+		// Check on the tell() calls in progress a few times per deadline
+		this.watchdog = Executors.newSingleThreadScheduledExecutor(
+		                                       new WorkerFactory("jmud-watchdog-"));
+		long period = Math.max(tellTimeout / 4, 10);
+		this.watchdog.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				long now = System.currentTimeMillis();
+				for (MudOutbox o : sending) o.checkDeadline(now);
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/** Create a new lane.  Each MudPlace asks for one the first time it speaks */
+	public Lane newLane() { return new Lane(); }
+
+	/**
+	 * Post a message from the specified place to each of the recipients.
+	 * They are all given the same MudMessage.  This is called by a lane's
+	 * worker, and returns without waiting for the messages to be delivered.
+	 **/
+	public void deliver(MudPlace from, Vector recipients, String message) {
+		MudMessage m = new MudMessage(message);
+		for (int i=0; i<recipients.size(); i++)
+			outbox((RemoteMudPerson) recipients.elementAt(i)).post(from, m);
+	}
+
+	/** Return the outbox for the specified person, creating it if necessary */
+	public MudOutbox outbox(RemoteMudPerson who) {
+		synchronized(outboxes) {
+			MudOutbox o = outboxes.get(who);
+			if (o == null) {
+				o = new MudOutbox(this, who);
+				outboxes.put(who, o);
+			}
+			return o;
+		}
+	}
+
+	/** Discard the outbox of a person who has been evicted */
+	void forget(RemoteMudPerson who, MudOutbox o) {
+		if (who == null) return;
+		synchronized(outboxes) {
+			if (outboxes.get(who) == o) outboxes.remove(who);
+		}
+	}
+
+	/**
+	 * Write off a courier stuck in tell() to a person who has been removed,
+	 * and let the pool start another in its place.
+	 **/
+	synchronized void abandon() {
+		abandoned++;
+		couriers.setMaximumPoolSize(courierThreads + abandoned);
+		couriers.setCorePoolSize(courierThreads + abandoned);
+	}
+
+	/** Shrink the pool again once a courier that was written off is free */
+	synchronized void reclaim() {
+		abandoned--;
+		couriers.setCorePoolSize(courierThreads + abandoned);
+		couriers.setMaximumPoolSize(courierThreads + abandoned);
+	}
+
+	/** Return the number of messages waiting to be delivered in all places */
+	public int getPending() { return pending.get(); }
+
+	/** Return the number of tell() calls in progress */
+	public int getInFlight() { return sending.size(); }
+
+	/** Return the number of messages discarded by the rejection policy */
+	public long getDropped() { return dropped.get(); }
+
+	/** Stop the worker threads once the messages already submitted are sent */
+	public void shutdown() {
+		pool.shutdown();
+		couriers.shutdown();
+		watchdog.shutdown();
+	}
+
+	/**
+	 * A Lane is a queue of delivery tasks for a single place.  At most one
+	 * of the pool's threads works on a lane at any time, which is what keeps
+	 * the messages within one place in order.
+	 **/
+	public class Lane implements Runnable {
+		private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+		private boolean scheduled;  // Is this lane queued or running in the pool?
+
+		/**
+		 * Queue a delivery task for this place.  If the place already has
+		 * too many tasks waiting, apply the rejection policy.  A worker
+		 * thread is never made to wait, since it may be the very thread
+		 * that would make room.
+		 **/
+		public void submit(Runnable task) {
+			synchronized(this) {
+				while (tasks.size() >= queueDepth &&
+				       !(Thread.currentThread() instanceof Worker)) {
+					if (policy.equals(DISCARD)) { dropped.incrementAndGet(); return; }
+					if (policy.equals(DISCARD_OLDEST)) {
+						tasks.removeFirst();
+						pending.decrementAndGet();
+						dropped.incrementAndGet();
+						break;
+					}
+					try { wait(); }
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						dropped.incrementAndGet();
+						return;
+					}
+				}
+				tasks.addLast(task);
+				pending.incrementAndGet();
+				if (scheduled) return;   // A worker will get to it
+				scheduled = true;
+			}
+			pool.execute(this);
+		}
+
+		/**
+		 * Run by a worker thread.  Deliver a few of the waiting tasks, then
+		 * requeue the lane if any are left, so that one busy place can't
+		 * keep the workers from the others.
+		 **/
+		public void run() {
+			for (int n = 0; n < FAIRNESS; n++) {
+				Runnable task;
+				synchronized(this) {
+					task = tasks.pollFirst();
+					if (task == null) { scheduled = false; return; }
+					pending.decrementAndGet();
+					notifyAll();           // Wake any sender waiting for room
+				}
+				try { task.run(); }
+				catch (RuntimeException e) {
+					System.out.println(" >>>> MudBroadcaster: delivery failed: " + e);
+				}
+			}
+			pool.execute(this);
+		}
+	}
+
+	/** The threads of the broadcaster, marked so a lane can recognize them */
+	static class Worker extends Thread {
+		Worker(Runnable r, String name) { super(r, name); setDaemon(true); }
+	}
+
+	/** Creates the named daemon worker threads */
+	static class WorkerFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+		private final String prefix;
+		WorkerFactory(String prefix) { this.prefix = prefix; }
+		public Thread newThread(Runnable r) {
+			return new Worker(r, prefix + count.incrementAndGet());
+		}
+	}
+}
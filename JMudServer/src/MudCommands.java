@@ -0,0 +1,363 @@
+import java.rmi.*;
+import java.util.*;
+import jmud.*;
+
+/**
+ * MudCommands interprets the commands people type, on the server, for
+ * RemoteMudPlace.execute().  A client used to turn each command into one
+ * or more remote calls of its own ("talk" looked the person up and then
+ * called them, "go" moved and then looked); now it sends the line it was
+ * typed, and gets back a MudResult with everything it has to show, in one
+ * round trip.  MudSession runs its commands the same way.
+ *
+ * Each command is a Command object in a table, looked up by its first
+ * word.  The rest of the line is its argument.  A command that needs more
+ * input lists its questions, which clients fetch once with
+ * RemoteMudServer.getPrompts(), ask, and send with the line, so that the
+ * command still takes one call.  A command sent without its answers
+ * returns its questions, and the client sends the line again with them.
+ * A new command only has to be registered here, and every client can use
+ * it, and "help" will describe it.
+ **/
+public class MudCommands {
+	/** The commands, by name, in the order help lists them */
+	static final LinkedHashMap<String,Command> commands = new LinkedHashMap<String,Command>();
+
+	/**
+	 * A command.  Commands that need an argument name what it is, so that
+	 * they can be refused before any question is asked.  A question may
+	 * include %s, which is replaced by the argument.
+	 **/
+	public abstract static class Command {
+		final String usage;          // What help says about it
+		final String needs;          // What the argument is, if it must be given
+		final String[] questions;    // What to ask before running it
+		final boolean[] longAnswers; // Which answers may take several lines
+
+		public Command(String usage, String needs, String[] questions, boolean[] longAnswers) {
+			this.usage = usage;
+			this.needs = needs;
+			this.questions = (questions == null) ? new String[0] : questions;
+			this.longAnswers = longAnswers;
+		}
+
+		public Command(String usage) { this(usage, null, null, null); }
+
+		/** Return the questions, for a client to ask before it sends the command */
+		MudPrompts prompts() { return new MudPrompts(needs, questions, longAnswers); }
+
+		/**
+		 * Check the argument before any question is asked, by throwing a
+		 * MudException if it won't do.  Most commands have nothing to check.
+		 * The check is skipped if the client asked the questions itself.
+		 **/
+		void check(MudPlace place, String arg) throws Exception {}
+
+		/** Run the command for a person in a place, once its questions are answered */
+		abstract MudResult run(MudPlace place, RemoteMudPerson who, String arg,
+		                       String[] answers) throws Exception;
+	}
+
+	/** Add a command, or replace the one of the same name */
+	public static void register(String name, Command command) {
+		synchronized(commands) { commands.put(name, command); }
+	}
+
+	/**
+	 * Return the prompts of every command that asks questions, by name,
+	 * for RemoteMudServer.getPrompts()
+	 **/
+	static Hashtable<String,MudPrompts> prompts() {
+		Hashtable<String,MudPrompts> prompts = new Hashtable<String,MudPrompts>();
+		synchronized(commands) {
+			for (Map.Entry<String,Command> e : commands.entrySet())
+				if (e.getValue().questions.length > 0) prompts.put(e.getKey(), e.getValue().prompts());
+		}
+		return prompts;
+	}
+
+	/**
+	 * Return the questions to ask before sending a command line, or null if
+	 * there are none.  MudSession asks them first, as clients do.
+	 **/
+	static String[] questions(String line) {
+		line = line.trim();
+		int i = line.indexOf(' ');
+		String cmd = (i == -1) ? line : line.substring(0, i);
+		String arg = (i == -1) ? "" : line.substring(i+1).trim();
+		Command c;
+		synchronized(commands) { c = commands.get(cmd.toLowerCase()); }
+		return (c == null) ? null : c.prompts().ask(arg);
+	}
+
+	/**
+	 * Carry out a command line for a person in a place.  MUD exceptions,
+	 * and any other errors, are reported in the result's text.
+	 **/
+	static MudResult execute(MudPlace place, RemoteMudPerson who, String line, String[] answers) {
+		// Break the input into command and an argument that consists
+		// of the rest of the line.  Convert the command to lowercase.
+		line = line.trim();
+		String cmd, arg;
+		int i = line.indexOf(' ');
+		if (i == -1) { cmd = line.toLowerCase(); arg = ""; }
+		else {
+			cmd = line.substring(0, i).toLowerCase();
+			arg = line.substring(i+1).trim();
+		}
+		Command c;
+		synchronized(commands) { c = commands.get(cmd); }
+		if (c == null) return new MudResult("Unknown command. Try 'help'.");
+		try {
+			if (c.needs != null && arg.length() == 0)
+				throw new IllegalArgumentException(c.needs + " expected");
+			if (answers == null || answers.length < c.questions.length) {
+				if (c.questions.length > 0) {
+					c.check(place, arg);
+					String[] q = new String[c.questions.length];
+					for (int n=0; n<q.length; n++) q[n] = c.questions[n].replace("%s", arg);
+					return new MudResult(null, null, q, c.longAnswers, null, false);
+				}
+			}
+			return c.run(place, who, arg, answers);
+		}
+		catch (MudException.MudExceptionBase e) { return new MudResult(explain(e)); }
+		catch (RemoteException e) {
+			return new MudResult("The MUD is having technical difficulties.\n" + e);
+		}
+		catch (Exception e) {
+			return new MudResult("Syntax or other error:\n" + e + "\nTry using the 'help' command.");
+		}
+	}
+
+	/** Return what to tell the person about a MUD exception */
+	static String explain(MudException.MudExceptionBase e) {
+		if (e instanceof MudException.NoSuchThing) return "There isn't any such thing here.";
+		if (e instanceof MudException.NoSuchPerson) return "There isn't anyone by that name here.";
+		if (e instanceof MudException.NoSuchExit) return "There isn't an exit in that direction.";
+		if (e instanceof MudException.NoSuchPlace) return "There isn't any such place.";
+		if (e instanceof MudException.ExitAlreadyExists)
+			return "There is already an exit in that direction.";
+		if (e instanceof MudException.PlaceAlreadyExists)
+			return "There is already a place with that name.";
+		if (e instanceof MudException.LinkFailed) return "That exit is not functioning.";
+		if (e instanceof MudException.BadPassword) return "Invalid Password.";
+		if (e instanceof MudException.NotThere) return "You can't do that when you're not there.";
+		if (e instanceof MudException.AlreadyThere) return "You can't go there; you're already there.";
+		return e.toString();
+	}
+
+	/**
+	 * Return the number of seconds at the end of an argument such as
+	 * "north 30", or -1 if there isn't one.  There isn't if the whole
+	 * argument is one of the names, since a name may end in a number too.
+	 **/
+	static int seconds(String arg, Collection names) {
+		int i = arg.lastIndexOf(' ');
+		if (i == -1 || names.contains(arg)) return -1;
+		try { return Math.max(-1, Integer.parseInt(arg.substring(i+1))); }
+		catch (NumberFormatException e) { return -1; }
+	}
+
+	/** Return a result that only shows a view of a place */
+	static MudResult view(PlaceView view) {
+		return new MudResult(null, view, null, null, null, false);
+	}
+
+	// The standard commands
+	static {
+		register("look", new Command("look: Look around") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				return view(place.look());
+			}
+		});
+		register("examine", new Command("examine <thing>: Examine the named thing in more detail") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				return new MudResult(place.examineThing(arg));
+			}
+		});
+		register("describe", new Command("describe <person>: Describe the named person") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				RemoteMudPerson p = place.getPerson(arg);
+				try { return new MudResult(p.getDescription()); }
+				catch (RemoteException e) {
+					return new MudResult(arg + " is having technical difficulties. " +
+					                     "No description is available.");
+				}
+			}
+		});
+		register("go", new Command("go <direction>: Go in the named direction (i.e. a named exit)") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				return view(place.goAndLook(who, arg));
+			}
+		});
+		register("travel", new Command("travel <place>: Go to the named place, the shortest way") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				return place.journey(who, arg);
+			}
+		});
+		register("find", new Command("find <words>: Find the places and things that mention them") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				MudMatch[] found = place.server.find(arg);
+				if (found.length == 0) return new MudResult("Nothing like that was found.");
+				StringBuilder b = new StringBuilder();
+				for (int i=0; i<found.length; i++) {
+					if (i > 0) b.append('\n');
+					if (found[i].getThing() == null) b.append("The place ");
+					else b.append("The ").append(found[i].getThing()).append(", in ");
+					b.append(found[i].getPlaceName());
+				}
+				return new MudResult(b.toString());
+			}
+		});
+		register("say", new Command("say <message>: Say something to everyone") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				place.speak(who, arg);
+				return new MudResult(null);
+			}
+		});
+		register("do", new Command("do <message>: Tell everyone that you are doing something") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				place.act(who, arg);
+				return new MudResult(null);
+			}
+		});
+		register("shout", new Command("shout <message>: Say something to everyone nearby") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				place.shout(who, arg);
+				return new MudResult(null);
+			}
+		});
+		register("talk", new Command("talk <person>: Talk to the named person. Will prompt for message",
+		                             null, new String[] { "What do you want to say?: " }, null) {
+			void check(MudPlace place, String arg) throws Exception { place.getPerson(arg); }
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				String name = place.verifyPresence(who);
+				RemoteMudPerson p = place.getPerson(arg);
+				try { p.tell(name + " says \"" + a[0] + "\""); }
+				catch (RemoteException e) {
+					return new MudResult(arg + " is having technical difficulties. " +
+					                     "Can't talk to named person.");
+				}
+				return new MudResult(null);
+			}
+		});
+		register("change", new Command("change: Change how you are described. Will prompt for input",
+		                               null, new String[] { "Describe yourself for others: " },
+		                               new boolean[] { true }) {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				// An inbox is told here, so the client needn't call it as well
+				if (who instanceof InboxPerson) {
+					MudInbox inbox = place.server.inboxOf((InboxPerson) who);
+					if (inbox != null) inbox.setDescription(a[0]);
+					else ((InboxPerson) who).getInbox().setDescription(a[0]);
+				}
+				return new MudResult(null, null, null, null, a[0], false);
+			}
+		});
+		register("create", new Command("create <thing>: Create a new thing. Prompts for description",
+		                               "name", new String[] { "Please describe the %s: " },
+		                               new boolean[] { true }) {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				place.createThing(who, arg, a[0]);
+				return new MudResult(null);
+			}
+		});
+		register("destroy", new Command("destroy <thing> [<seconds>]: Destroy a thing, for good,\n" +
+		                                "\tor until that many seconds from now") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				int seconds = seconds(arg, place.getThings());
+				if (seconds < 0) {
+					place.destroyThing(who, arg);
+					return new MudResult(null);
+				}
+				String thing = arg.substring(0, arg.lastIndexOf(' ')).trim();
+				String description = place.examineThing(thing);
+				place.destroyThing(who, thing);
+				place.respawnLater(thing, description, seconds * 1000L);
+				return new MudResult("The " + thing + " will be back in " + seconds + " seconds.");
+			}
+		});
+		register("open", new Command("open <direction>: Create an adjoining place. Prompts for input",
+		                             "direction",
+		                             new String[] { "What is the name of the new place?: ",
+		                                            "What is the direction from there back to here?: ",
+		                                            "Please describe the new place: " },
+		                             new boolean[] { false, false, true }) {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				place.createPlace(who, arg, a[1], a[0], a[2]);
+				return new MudResult(null);
+			}
+		});
+		register("close", new Command("close <direction> [<seconds>]: Close an exit from this place,\n" +
+		                              "\tnow or that many seconds from now", "direction", null, null) {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				int seconds = seconds(arg, place.getExits());
+				if (seconds < 0) {
+					place.close(who, arg);
+					return new MudResult(null);
+				}
+				String exit = arg.substring(0, arg.lastIndexOf(' ')).trim();
+				String name = place.verifyPresence(who);
+				if (!place.getExits().contains(exit)) throw new MudException.NoSuchExit();
+				place.closeLater(exit, seconds * 1000L);
+				place.tellEveryone(name + " has set exit " + exit + " to close in " +
+				                   seconds + " seconds");
+				return new MudResult(null);
+			}
+		});
+		register("link", new Command("link <direction>: Create an exit to an existing place,\n" +
+		                             "\tperhaps on another server. Will prompt for input",
+		                             "direction",
+		                             new String[] { "What host are you linking to?: ",
+		                                            "What is the name of the MUD on that host?: ",
+		                                            "What is the place name in that MUD?: " },
+		                             null) {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				place.linkTo(who, arg, a[0], a[1], a[2]);
+				return new MudResult("Don't forget to make a link from there back to here !!");
+			}
+		});
+		register("dump", new Command("dump <filename>: Save server state. Prompts for password",
+		                             "filename", new String[] { "Password: " }, null) {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				place.server.dump(a[0], arg);
+				return new MudResult(null);
+			}
+		});
+		register("quit", new Command("quit: Leave the MUD") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a)
+					throws Exception {
+				try { place.exit(who, place.verifyPresence(who) + " has left."); }
+				catch (MudException.NotThere e) {}   // Gone already
+				return new MudResult("..... Bye .....", null, null, null, null, true);
+			}
+		});
+		register("help", new Command("help: Display this message") {
+			MudResult run(MudPlace place, RemoteMudPerson who, String arg, String[] a) {
+				StringBuilder b = new StringBuilder("Commands are:");
+				synchronized(commands) {
+					for (Command c : commands.values()) b.append('\n').append(c.usage);
+				}
+				return new MudResult(b.toString());
+			}
+		});
+	}
+}
@@ -0,0 +1,42 @@
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * MudDescriptions keeps one copy of each description in the server.
+ * Builders paste the same long text into hundreds of places and things,
+ * and without this every one of them would hold a copy of its own.  Each
+ * description is looked up by its contents as it comes into the server,
+ * whether it is typed in, replayed from the journal, read from a save
+ * file, a world file or another server, and if an equal one is already
+ * held, that one is used instead.  The copy is a MudText, which holds the
+ * description in UTF-8, at half the size of a String on Java 8.
+ *
+ * The copies are only weakly held, so a description nobody uses any more
+ * is forgotten.  A save file written by dump() stores each one once too,
+ * as MudText decodes a description once while it is being written, and
+ * serialization writes an object it has already written as a reference to
+ * it.  A world file already stores every string once, and only decodes a
+ * place's strings when the place is built.
+ **/
+public class MudDescriptions {
+	static final WeakHashMap<MudText,WeakReference<MudText>> shared =
+		new WeakHashMap<MudText,WeakReference<MudText>>();
+
+	/** Return the shared copy of the text, making it if it is new */
+	static MudText share(String text) {
+		if (text == null) return null;
+		MudText t = new MudText(text);
+		synchronized(shared) {
+			WeakReference<MudText> r = shared.get(t);
+			MudText s = (r == null) ? null : r.get();
+			if (s != null) return s;
+			shared.put(t, new WeakReference<MudText>(t));
+			return t;
+		}
+	}
+
+	/** Return how many different descriptions are held */
+	static int size() {
+		synchronized(shared) { return shared.size(); }
+	}
+}
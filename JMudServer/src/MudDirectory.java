@@ -0,0 +1,117 @@
+import java.io.*;
+import java.rmi.*;
+import java.rmi.server.*;
+import java.util.*;
+import jmud.*;
+
+/**
+ * This class implements RemoteMudDirectory, the table of which server
+ * serves each zone of a MUD that is split across several servers.  It is
+ * small and changes rarely, so it is kept in a Hashtable and written out
+ * whole to a properties file, if it was given one, every time it changes.
+ *
+ * The main() method runs a directory on its own, and also moves zones
+ * between servers, or lists who serves what:
+ *   java MudDirectory <url> [<file>]
+ *   java MudDirectory -move <url> <password> <zone> <server url>
+ *   java MudDirectory -list <url>
+ **/
+public class MudDirectory extends UnicastRemoteObject implements RemoteMudDirectory {
+	final Hashtable<String,String> owners = new Hashtable<String,String>();  // zone to url
+	final File file;                      // Where the table is kept, if anywhere
+
+	/** Create a directory, reading its table from the file if there is one */
+	public MudDirectory(File file) throws IOException {
+		this.file = file;
+		if (file != null && file.exists()) {
+			Properties p = new Properties();
+			InputStream in = new FileInputStream(file);
+			try { p.load(in); }
+			finally { in.close(); }
+			for (String zone : p.stringPropertyNames()) owners.put(zone, p.getProperty(zone));
+		}
+	}
+
+	public synchronized String getOwner(String zone) { return owners.get(zone); }
+
+	public synchronized String claim(String zone, String url) throws RemoteException {
+		String owner = owners.get(zone);
+		if (owner != null) return owner;
+		owners.put(zone, url);
+		save();
+		System.out.println(" >>>> MudDirectory: zone '" + zone + "' is served by " + url);
+		return url;
+	}
+
+	public synchronized boolean transfer(String zone, String from, String to)
+			throws RemoteException {
+		if (!from.equals(owners.get(zone))) return false;
+		owners.put(zone, to);
+		save();
+		System.out.println(" >>>> MudDirectory: zone '" + zone + "' moved from " + from +
+		                   " to " + to);
+		return true;
+	}
+
+	public synchronized Hashtable getZones() { return new Hashtable<String,String>(owners); }
+
+	/**
+	 * Write the table to a temporary file and rename it, so a crash part
+	 * way through leaves the old table intact.
+	 **/
+	void save() throws RemoteException {
+		if (file == null) return;
+		try {
+			Properties p = new Properties();
+			p.putAll(owners);
+			File tmp = new File(file.getPath() + ".tmp");
+			OutputStream out = new FileOutputStream(tmp);
+			try { p.store(out, "JMud zones and the servers that serve them"); }
+			finally { out.close(); }
+			if (!tmp.renameTo(file)) {
+				file.delete();
+				if (!tmp.renameTo(file)) throw new IOException("cannot replace " + file);
+			}
+		}
+		catch (IOException e) { throw new RemoteException("MUD directory not saved", e); }
+	}
+
+	/** Run a directory, or ask one to move or list zones */
+	public static void main(String[] args) {
+		try {
+			if (args.length == 5 && args[0].equals("-move")) {
+				RemoteMudDirectory directory = (RemoteMudDirectory) Naming.lookup(args[1]);
+				String owner = directory.getOwner(args[3]);
+				if (owner == null) throw new MudException.NoSuchPlace();
+				RemoteMudServer server = (RemoteMudServer) Naming.lookup(owner);
+				server.moveZone(args[2], args[3], args[4]);
+				System.out.println("Zone '" + args[3] + "' moved from " + owner +
+				                   " to " + args[4]);
+				return;
+			}
+			if (args.length == 2 && args[0].equals("-list")) {
+				RemoteMudDirectory directory = (RemoteMudDirectory) Naming.lookup(args[1]);
+				Map zones = new TreeMap(directory.getZones());
+				for (Iterator i = zones.entrySet().iterator(); i.hasNext(); ) {
+					Map.Entry e = (Map.Entry) i.next();
+					System.out.println("'" + e.getKey() + "'\t" + e.getValue());
+				}
+				return;
+			}
+			MudDirectory directory = new MudDirectory((args.length > 1) ? new File(args[1]) : null);
+			System.setSecurityManager(new RMISecurityManager());
+			Naming.rebind(args[0], directory);
+			System.out.println(" ** Directory start -- " + directory.owners.size() + " zones **\n");
+		}
+		catch (Exception e) {
+			System.out.println(e);
+			System.out.println("Usage: java MudDirectory <url> [<file>]\n" +
+			                   "   or: java MudDirectory -move <url> <password> <zone> <server url>\n" +
+			                   "   or: java MudDirectory -list <url>");
+			System.exit(1);
+		}
+	}
+
+	/** This constant is a version number for serialization */
+	static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,82 @@
+import java.util.concurrent.atomic.*;
+
+/**
+ * A MudHistogram counts measurements, such as latencies in microseconds,
+ * so that percentiles of them can be reported.  Values are counted in
+ * buckets: exactly below 16, and above that in 16 buckets for every power
+ * of two, so a percentile is within about 6% of the true value however
+ * widely the values are spread.  The buckets take a fixed 8k, recording a
+ * value never allocates or locks, and any number of threads may record at
+ * once.
+ **/
+public class MudHistogram {
+	static final int SUB = 4;                     // 2^SUB buckets per power of two
+	final AtomicLongArray counts = new AtomicLongArray(64 << SUB);
+	final AtomicLong count = new AtomicLong();    // Values recorded
+	final AtomicLong sum = new AtomicLong();      // Their total
+	final AtomicLong max = new AtomicLong();      // The largest
+
+	/** Count a value.  Negative values are counted as 0. */
+	public void record(long value) {
+		if (value < 0) value = 0;
+		// Raise the maximum first, so that it is never below a value that
+		// getPercentile() can find in the buckets
+		long m;
+		while (value > (m = max.get()) && !max.compareAndSet(m, value)) ;
+		counts.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+	}
+
+	/** Return how many values have been recorded */
+	public long getCount() { return count.get(); }
+
+	/** Return the largest value recorded */
+	public long getMax() { return max.get(); }
+
+	/** Return the mean of the values recorded */
+	public double getMean() {
+		long n = count.get();
+		return (n == 0) ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Return the value that the specified percentage of values are at or
+	 * below, or rather the top of its bucket.
+	 **/
+	public long getPercentile(double percent) {
+		long n = count.get();
+		if (n == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(percent / 100 * n));
+		long seen = 0;
+		for (int b=0; b<counts.length(); b++) {
+			seen += counts.get(b);
+			if (seen >= rank) return Math.min(lowest(b + 1) - 1, max.get());
+		}
+		return max.get();
+	}
+
+	/** Forget every value recorded so far */
+	public void reset() {
+		for (int b=0; b<counts.length(); b++) counts.set(b, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/** Return the bucket a value is counted in */
+	static int bucket(long value) {
+		if (value < (1 << SUB)) return (int) value;
+		int e = 63 - Long.numberOfLeadingZeros(value);      // At least SUB
+		int sub = (int) (value >>> (e - SUB)) & ((1 << SUB) - 1);
+		return ((e - SUB + 1) << SUB) + sub;
+	}
+
+	/** Return the smallest value counted in a bucket */
+	static long lowest(int bucket) {
+		if (bucket < (1 << SUB)) return bucket;
+		int e = (bucket >> SUB) + SUB - 1;
+		long sub = bucket & ((1 << SUB) - 1);
+		return (1L << e) + (sub << (e - SUB));
+	}
+}
@@ -0,0 +1,115 @@
+import java.rmi.*;
+import java.rmi.server.*;
+import java.util.ArrayDeque;
+import jmud.*;
+
+/**
+ * A MudInbox holds the messages for a person who logged in with
+ * MudServer.login(), until their client comes to collect them with poll().
+ * The client always has a poll() call waiting, which returns as soon as a
+ * message arrives, so messages reach the player as quickly as they would
+ * through a callback, but all the connections are made by the client.
+ *
+ * Messages are only kept for a client that is listening.  If the inbox
+ * holds more than jmud.inbox.queue messages (default 1000), the oldest are
+ * dropped.  If the client stops polling for jmud.inbox.idle milliseconds
+ * (default 120000), or its RMI lease runs out, the inbox is closed, and
+ * the next attempt to deliver a message removes the person from their
+ * place, just as a failed callback does.
+ **/
+public class MudInbox extends UnicastRemoteObject implements RemoteMudInbox, Unreferenced {
+	private static final long serialVersionUID = 1L;
+	static final int maxQueue = Integer.getInteger("jmud.inbox.queue", 1000);
+	static final long maxIdle = Long.getLong("jmud.inbox.idle", 120000);
+	static final long maxWait = 60000;     // Longest a poll() may wait
+
+	final transient MudServer server;      // The server holding this inbox
+	final InboxPerson person;              // Who the messages are for
+	String description;                    // What people see when they look at them
+	final ArrayDeque<String> messages = new ArrayDeque<String>();  // Waiting
+	long lastPoll = System.currentTimeMillis();  // When the client last called
+	boolean polling;                       // Is a poll() waiting now?
+	boolean closed;                        // Set once the client has gone
+
+	MudInbox(MudServer server, String description) throws RemoteException {
+		this.server = server;
+		this.description = description;
+		this.person = new InboxPerson(this);
+		person.attach(this);
+	}
+
+	/** Return the person this inbox belongs to */
+	public RemoteMudPerson getPerson() throws RemoteException { return person; }
+
+	/** Return the person's description */
+	public synchronized String getDescription() throws RemoteException { return description; }
+
+	/** Change the person's description */
+	public synchronized void setDescription(String d) throws RemoteException { description = d; }
+
+	/**
+	 * Return whatever messages are waiting, or wait for some to arrive.
+	 * While this waits it holds one of the server's RMI threads, which is
+	 * why the wait is limited.
+	 **/
+	public synchronized String[] poll(long timeout) throws RemoteException {
+		if (closed) throw new NoSuchObjectException("logged out");
+		polling = true;
+		long deadline = System.currentTimeMillis() + Math.min(Math.max(timeout, 0), maxWait);
+		try {
+			for (;;) {
+				long left = deadline - System.currentTimeMillis();
+				if (!messages.isEmpty() || left <= 0 || closed) break;
+				wait(left);
+			}
+		}
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		finally {
+			polling = false;
+			lastPoll = System.currentTimeMillis();
+		}
+		String[] batch = messages.toArray(new String[messages.size()]);
+		messages.clear();
+		return batch;
+	}
+
+	/** Queue a message for the person */
+	public void tell(String message) throws RemoteException {
+		tellBatch(new String[] { message });
+	}
+
+	/**
+	 * Queue several messages for the person.  If the client has stopped
+	 * listening, close the inbox and throw a RemoteException, so that
+	 * whoever is delivering knows the person has gone.
+	 **/
+	public void tellBatch(String[] batch) throws RemoteException {
+		synchronized(this) {
+			if (!closed && !polling && System.currentTimeMillis() - lastPoll > maxIdle)
+				closed = true;
+			if (!closed) {
+				for (int i=0; i<batch.length; i++) messages.addLast(batch[i]);
+				while (messages.size() > maxQueue) messages.removeFirst();
+				notifyAll();
+				return;
+			}
+		}
+		close();
+		throw new NoSuchObjectException("inbox closed");
+	}
+
+	/** Log out, and forget this inbox */
+	public void close() {
+		synchronized(this) {
+			closed = true;
+			messages.clear();
+			notifyAll();
+		}
+		server.forget(person);
+		try { unexportObject(this, true); }
+		catch (NoSuchObjectException e) {}
+	}
+
+	/** Called by RMI when no client holds a reference any more */
+	public void unreferenced() { close(); }
+}
@@ -0,0 +1,211 @@
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import jmud.*;
+
+/**
+ * MudIndex is a full-text index of the places on this server and the
+ * things in them, so that RemoteMudServer.find() can say which places and
+ * things have some words in their names or descriptions without looking
+ * through every place.  Each name and description is split into words,
+ * and for every word the index keeps the places and things that have it,
+ * and how often: a word in a name counts NAME_WEIGHT times as much as one
+ * in a description.
+ *
+ * find() only returns what has every word asked for.  The answers are
+ * scored by adding up, for each word, how often they have it times how
+ * rare the word is, so that a place called "kitchen" comes before one
+ * that mentions a kitchen, and words like "the" count for little.
+ *
+ * The index is built the first time it is needed, with the server's world
+ * lock held alone, so nothing changes while it is built.  Places still
+ * waiting in a world file are read from the file, without building them.
+ * From then on MudPlace and MudServer keep it up to date as things and
+ * places come and go, while they hold the world lock shared, so it never
+ * misses a change.
+ **/
+public class MudIndex {
+	static final int NAME_WEIGHT = 3;
+
+	final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	final HashMap<String,HashMap<Entry,Integer>> words =  // Who has each word,
+		new HashMap<String,HashMap<Entry,Integer>>();    // and how often
+	final HashMap<String,HashMap<String,Entry>> places = // Each place, by name,
+		new HashMap<String,HashMap<String,Entry>>();    // and the things in it
+	int entries;                             // Places and things indexed
+
+	/**
+	 * Build the index of a server's places, and give it to the server,
+	 * unless another thread has just done so.
+	 **/
+	static MudIndex build(MudServer server) {
+		long start = System.nanoTime();
+		MudIndex index = new MudIndex();
+		server.world.writeLock().lock();
+		try {
+			if (server.index != null) return server.index;
+			// Nobody can change a place while the world lock is held alone.
+			// Places can still be built from the world file, so read those
+			// first: one built meanwhile is indexed again below, which
+			// replaces what was read from the file with the same thing.
+			MudWorldFile w = server.mapped;
+			for (int p=0; w != null && p<w.places; p++) {
+				if (w.built.get(p) != null) continue;
+				String name = w.name(p);
+				if (server.departed.contains(name)) continue;
+				index.addPlace(name, w.description(p));
+				for (Map.Entry<String,String> t : w.thingsOf(p).entrySet())
+					index.addThing(name, t.getKey(), t.getValue());
+			}
+			synchronized(server.places) {
+				for (Iterator i = server.places.values().iterator(); i.hasNext(); ) {
+					MudPlace p = (MudPlace) i.next();
+					index.addPlace(p.placename, MudText.text(p.description));
+					for (Map.Entry<String,MudText> t : p.things.entrySet())
+						index.addThing(p.placename, t.getKey(), MudText.text(t.getValue()));
+				}
+			}
+			server.index = index;
+		}
+		finally { server.world.writeLock().unlock(); }
+		System.out.println(" >>>> MudIndex: indexed " + index.entries + " places and things in " +
+		                   (System.nanoTime() - start) / 1000000 + " ms");
+		return index;
+	}
+
+	/** Index a new place */
+	void addPlace(String placename, String description) {
+		add(placename, null, placename, description);
+	}
+
+	/** Index a new thing in a place */
+	void addThing(String placename, String thing, String description) {
+		add(placename, thing, thing, description);
+	}
+
+	/** Forget a thing that has been destroyed */
+	void removeThing(String placename, String thing) {
+		lock.writeLock().lock();
+		try {
+			HashMap<String,Entry> here = places.get(placename);
+			Entry e = (here == null) ? null : here.remove(thing);
+			if (e != null) forget(e);
+		}
+		finally { lock.writeLock().unlock(); }
+	}
+
+	/** Forget a place that has gone, and everything in it */
+	void removePlace(String placename) {
+		lock.writeLock().lock();
+		try {
+			HashMap<String,Entry> here = places.remove(placename);
+			if (here != null)
+				for (Entry e : here.values()) forget(e);
+		}
+		finally { lock.writeLock().unlock(); }
+	}
+
+	/**
+	 * Return the places and things that have every word in the query, best
+	 * first, but no more than max of them.
+	 **/
+	MudMatch[] find(String query, int max) {
+		String[] asked = split(query);
+		if (asked.length == 0) return new MudMatch[0];
+		final HashMap<Entry,Double> scores = new HashMap<Entry,Double>();
+		lock.readLock().lock();
+		try {
+			// Start with the rarest word, which has the fewest to check
+			HashMap<Entry,Integer>[] found = new HashMap[asked.length];
+			for (int i=0; i<asked.length; i++) {
+				found[i] = words.get(asked[i]);
+				if (found[i] == null) return new MudMatch[0];
+			}
+			Arrays.sort(found, new Comparator<HashMap<Entry,Integer>>() {
+				public int compare(HashMap<Entry,Integer> a, HashMap<Entry,Integer> b) {
+					return a.size() - b.size();
+				}
+			});
+			next:
+			for (Map.Entry<Entry,Integer> candidate : found[0].entrySet()) {
+				Entry e = candidate.getKey();
+				double score = 0;
+				for (int i=0; i<found.length; i++) {
+					Integer n = (i == 0) ? candidate.getValue() : found[i].get(e);
+					if (n == null) continue next;
+					score += n * Math.log(1 + (double) entries / found[i].size());
+				}
+				scores.put(e, score);
+			}
+		}
+		finally { lock.readLock().unlock(); }
+		ArrayList<Entry> best = new ArrayList<Entry>(scores.keySet());
+		Collections.sort(best, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				int c = Double.compare(scores.get(b), scores.get(a));
+				if (c != 0) return c;
+				c = a.placename.compareTo(b.placename);
+				if (c != 0 || a.thing == b.thing) return c;
+				if (a.thing == null) return -1;     // The place before its things
+				if (b.thing == null) return 1;
+				return a.thing.compareTo(b.thing);
+			}
+		});
+		MudMatch[] matches = new MudMatch[Math.min(max, best.size())];
+		for (int i=0; i<matches.length; i++) {
+			Entry e = best.get(i);
+			matches[i] = new MudMatch(e.placename, e.thing, scores.get(e));
+		}
+		return matches;
+	}
+
+	/** Index a place, or a thing in it, by its name and description */
+	private void add(String placename, String thing, String name, String description) {
+		Entry e = new Entry(placename, thing);
+		for (String w : split(name)) e.count(w, NAME_WEIGHT);
+		for (String w : split(description)) e.count(w, 1);
+		lock.writeLock().lock();
+		try {
+			HashMap<String,Entry> here = places.get(placename);
+			if (here == null) places.put(placename, here = new HashMap<String,Entry>());
+			Entry old = here.put(thing, e);
+			if (old != null) forget(old);
+			for (Map.Entry<String,Integer> c : e.counts.entrySet()) {
+				HashMap<Entry,Integer> has = words.get(c.getKey());
+				if (has == null) words.put(c.getKey(), has = new HashMap<Entry,Integer>());
+				has.put(e, c.getValue());
+			}
+			entries++;
+		}
+		finally { lock.writeLock().unlock(); }
+	}
+
+	/** Take an entry out of the index.  The caller holds the write lock */
+	private void forget(Entry e) {
+		for (String w : e.counts.keySet()) {
+			HashMap<Entry,Integer> has = words.get(w);
+			has.remove(e);
+			if (has.isEmpty()) words.remove(w);
+		}
+		entries--;
+	}
+
+	/** Split text into lower case words, leaving out punctuation */
+	static String[] split(String text) {
+		if (text == null) return new String[0];
+		ArrayList<String> words = new ArrayList<String>();
+		for (String w : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+			if (w.length() > 0) words.add(w);
+		return words.toArray(new String[words.size()]);
+	}
+
+	/** A place or a thing in the index, and the words it has */
+	static class Entry {
+		final String placename, thing;    // thing is null for the place itself
+		final HashMap<String,Integer> counts = new HashMap<String,Integer>();
+		Entry(String placename, String thing) { this.placename = placename; this.thing = thing; }
+		void count(String word, int weight) {
+			Integer n = counts.get(word);
+			counts.put(word, (n == null) ? weight : n + weight);
+		}
+	}
+}
@@ -0,0 +1,358 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+import jmud.*;
+
+/**
+ * This class keeps a write-ahead journal of the changes made to a MUD, so
+ * that nothing is lost if the server crashes between dumps.  The journal
+ * lives in a directory holding numbered generations of two kinds of file:
+ * "world.snapshot.N", a MudWorldFile holding the MUD as it was, and
+ * "world.journal.N", a log of every change made from the time snapshot N was
+ * taken until the time snapshot N+1 was.
+ *
+ * Every change to the world (creating or destroying a thing, creating a
+ * place, linking or closing an exit, or a zone's places arriving from or
+ * leaving for another server) is appended to the log as a short
+ * record, while the place being changed is still locked, so the order of the
+ * log is the order the changes were made.  The person who made the change
+ * then waits until the record is safely on disk.  A single flusher thread
+ * writes records and forces them to disk, and everything appended while one
+ * force is in progress goes out together in the next one (group commit), so
+ * many people can build at once without each paying for their own fsync.
+ *
+ * When the log grows past jmud.journal.compact records (default 10000), a
+ * MudSnapshot of the world is captured and a new generation of the log is
+ * started, both in the moment the world is locked.  The snapshot is then
+ * written in the background while changes carry on going to the new log,
+ * and once it is safely on disk the older generations are deleted.  At
+ * startup the latest complete snapshot is loaded and every generation of
+ * the log from that one on is replayed on top of it, in order.
+ *
+ * Each record is its length, a type code, the type's string arguments, and
+ * a CRC, and each argument is its length and its UTF-8 bytes, so it can be
+ * as long as a player cares to type.  A record torn by a crash fails its
+ * length or CRC check, and replay stops there and cuts the log back to the
+ * last good record.  A change whose record would be longer than
+ * MAX_RECORD bytes is refused before it is made, and only the person making
+ * it is told; the journal carries on.
+ **/
+public class MudJournal implements Runnable {
+	/** The types of record in the journal */
+	public static final byte CREATE_THING = 1;   // place, thing, description
+	public static final byte DESTROY_THING = 2;  // place, thing
+	public static final byte CREATE_PLACE = 3;   // place, exit, entrance, name, description
+	public static final byte LINK = 4;           // place, exit, "url@placename"
+	public static final byte CLOSE = 5;          // place, exit
+	public static final byte ADOPT = 6;          // place, description
+	public static final byte JOIN = 7;           // place, exit, placename
+	public static final byte DEPART = 8;         // place
+
+	static final int MAX_RECORD = 1 << 24;       // The longest record replay accepts
+
+	final File dir;                         // Where the files are kept
+	final int compactEvery = Integer.getInteger("jmud.journal.compact", 10000);
+	MudServer server;                       // The MUD being journaled
+	long generation;                        // Generation of the open journal file
+	boolean snapshotted;                    // Is there a snapshot of that generation?
+	FileChannel channel;                    // The open journal file
+	ByteArrayOutputStream pending = new ByteArrayOutputStream();  // Not yet written
+	long appended;                          // Records appended so far
+	long durable;                           // Records known to be on disk
+	long logged;                            // Records in the log since the snapshot
+	boolean compacting;                     // Is a snapshot being written?
+	IOException failure;                    // Set if the journal can't be written
+
+	/**
+	 * Create a journal that keeps its files in the specified directory, and
+	 * find the latest snapshot there, if any.
+	 **/
+	public MudJournal(File dir) {
+		this.dir = dir;
+		dir.mkdirs();
+		long[] snapshots = generations("world.snapshot.");
+		if (snapshots.length > 0) {
+			generation = snapshots[snapshots.length-1];
+			snapshotted = true;
+		}
+	}
+
+	/** Return true if there is a snapshot to recover from */
+	public boolean hasSnapshot() { return snapshotted; }
+
+	/** Load the MUD from the latest snapshot */
+	public MudServer loadSnapshot() throws IOException, ClassNotFoundException {
+		return MudServer.load(snapshotFile(generation));
+	}
+
+	/**
+	 * Replay the log onto the MUD, then start journaling its changes.  If
+	 * there was no snapshot, take one now, so that the log always has
+	 * something to be replayed onto.
+	 **/
+	public void open(MudServer server) throws IOException {
+		this.server = server;
+		// Replay every generation from the snapshot's on, and carry on
+		// appending to the newest
+		long[] journals = generations("world.journal.");
+		for (int i=0; i<journals.length; i++) {
+			if (journals[i] < generation) continue;
+			if (channel != null) channel.close();
+			generation = journals[i];
+			channel = new RandomAccessFile(journalFile(generation), "rw").getChannel();
+			long good = replay(journalFile(generation));
+			if (good < channel.size()) {
+				System.out.println(" >>>> MudJournal: discarding " + (channel.size() - good) +
+				                   " bytes of torn records at the end of the journal");
+				channel.truncate(good);
+				channel.force(true);
+			}
+			channel.position(good);
+		}
+		if (channel == null)
+			channel = new RandomAccessFile(journalFile(generation), "rw").getChannel();
+		server.journal = this;
+		if (!snapshotted) {
+			// A log needs something to be replayed onto
+			MudSnapshot.capture(server).write(snapshotFile(generation), true);
+			snapshotted = true;
+		}
+		Thread flusher = new Thread(this, "jmud-journal");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Encode a record of a change, ready to append once the change is made.
+	 * Throws an IllegalArgumentException if the record would be too long to
+	 * replay, so the caller should encode it before making the change.
+	 **/
+	public static byte[] encode(byte type, String... args) {
+		byte[][] utf = new byte[args.length][];
+		long length = 2;
+		for (int i=0; i<args.length; i++) {
+			utf[i] = args[i].getBytes(StandardCharsets.UTF_8);
+			length += 4 + utf[i].length;
+		}
+		if (length > MAX_RECORD)
+			throw new IllegalArgumentException("change too long to journal: " + length + " bytes");
+		ByteBuffer b = ByteBuffer.allocate(4 + (int) length + 4);
+		b.putInt((int) length).put(type).put((byte) args.length);
+		for (int i=0; i<args.length; i++) b.putInt(utf[i].length).put(utf[i]);
+		CRC32 crc = new CRC32();
+		crc.update(b.array(), 4, (int) length);
+		b.putInt((int) crc.getValue());
+		return b.array();
+	}
+
+	/**
+	 * Append an encoded record to the log, and return its sequence number,
+	 * which the caller passes to await() once it has released its locks.
+	 * The record is not yet on disk when this returns.
+	 **/
+	public synchronized long append(byte[] record) {
+		pending.write(record, 0, record.length);
+		notifyAll();
+		return ++appended;
+	}
+
+	/**
+	 * Wait until the record with the specified sequence number is on disk.
+	 * Throws an IOException if the journal can no longer be written.
+	 **/
+	public synchronized void await(long seq) throws IOException {
+		boolean interrupted = false;
+		while (durable < seq && failure == null) {
+			try { wait(); }
+			catch (InterruptedException e) { interrupted = true; }
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		if (durable < seq) throw failure;
+	}
+
+	/**
+	 * The body of the flusher thread.  Write out whatever has been appended,
+	 * force it to disk, and let everyone who was waiting for it know.  When
+	 * the log has grown long enough, compact it into a new snapshot.
+	 **/
+	public void run() {
+		for (;;) {
+			try {
+				synchronized(this) {
+					while (pending.size() == 0) wait();
+				}
+				flush();
+				boolean compact;
+				synchronized(this) { compact = logged >= compactEvery; }
+				if (compact) compact();
+			}
+			catch (InterruptedException e) { return; }
+			catch (IOException e) {
+				System.out.println(" >>>> MudJournal: cannot write journal: " + e);
+				synchronized(this) { failure = e; notifyAll(); }
+				return;
+			}
+		}
+	}
+
+	/** Write and force everything appended so far */
+	void flush() throws IOException {
+		byte[] bytes;
+		long upTo;
+		synchronized(this) {
+			bytes = pending.toByteArray();
+			pending.reset();
+			upTo = appended;
+		}
+		if (bytes.length > 0) {
+			ByteBuffer b = ByteBuffer.wrap(bytes);
+			while (b.hasRemaining()) channel.write(b);
+			channel.force(false);
+		}
+		synchronized(this) {
+			logged += upTo - durable;
+			durable = upTo;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Capture a snapshot of the MUD and start a new generation of the log.
+	 * No changes can be made while this is going on, so the new log holds
+	 * exactly the changes made after the snapshot.  The snapshot is written
+	 * in the background, and only when it is safely on disk are the older
+	 * snapshot and logs deleted, so a crash part way through leaves enough
+	 * behind to recover from.
+	 **/
+	void compact() throws IOException {
+		synchronized(this) {
+			if (compacting) return;   // The last snapshot isn't written yet
+			compacting = true;
+		}
+		final MudSnapshot snapshot;
+		final long g;
+		server.world.writeLock().lock();
+		try {
+			flush();
+			snapshot = new MudSnapshot(server);
+			channel.close();
+			g = ++generation;
+			channel = new RandomAccessFile(journalFile(g), "rw").getChannel();
+			synchronized(this) { logged = 0; }
+		}
+		finally { server.world.writeLock().unlock(); }
+		MudSnapshot.writer.execute(new Runnable() {
+			public void run() {
+				try {
+					snapshot.write(snapshotFile(g), true);
+					discard(g);
+				}
+				catch (IOException e) {
+					System.out.println(" >>>> MudJournal: cannot write snapshot " + g + ": " + e);
+				}
+				finally {
+					synchronized(MudJournal.this) { compacting = false; }
+				}
+			}
+		});
+	}
+
+	/** Delete the snapshots and logs older than the specified generation */
+	void discard(long g) {
+		String[] prefixes = { "world.snapshot.", "world.journal." };
+		for (int p=0; p<prefixes.length; p++) {
+			long[] old = generations(prefixes[p]);
+			for (int i=0; i<old.length && old[i] < g; i++)
+				new File(dir, prefixes[p] + old[i]).delete();
+		}
+	}
+
+	/** Return the generations of the files with the specified prefix, in order */
+	long[] generations(String prefix) {
+		String[] names = dir.list();
+		if (names == null) return new long[0];
+		long[] found = new long[names.length];
+		int n = 0;
+		for (int i=0; i<names.length; i++) {
+			if (!names[i].startsWith(prefix)) continue;
+			try { found[n] = Long.parseLong(names[i].substring(prefix.length())); n++; }
+			catch (NumberFormatException e) {}   // A temporary file
+		}
+		found = Arrays.copyOf(found, n);
+		Arrays.sort(found);
+		return found;
+	}
+
+	File snapshotFile(long g) { return new File(dir, "world.snapshot." + g); }
+	File journalFile(long g) { return new File(dir, "world.journal." + g); }
+
+	/**
+	 * Read a log from the start, applying each record to the MUD.  Return
+	 * the position just past the last good record.
+	 **/
+	long replay(File journalFile) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+		                                         new FileInputStream(journalFile)));
+		long good = 0;
+		int count = 0;
+		try {
+			for (;;) {
+				int length;
+				try { length = in.readInt(); }
+				catch (EOFException e) { break; }
+				if (length < 2 || length > MAX_RECORD) break;
+				byte[] bytes = new byte[length];
+				in.readFully(bytes);
+				int check = in.readInt();
+				CRC32 crc = new CRC32();
+				crc.update(bytes);
+				if (check != (int) crc.getValue()) break;
+				DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+				byte type = record.readByte();
+				String[] args = new String[record.readByte()];
+				for (int i=0; i<args.length; i++) {
+					byte[] utf = new byte[record.readInt()];
+					record.readFully(utf);
+					args[i] = new String(utf, StandardCharsets.UTF_8);
+				}
+				apply(type, args);
+				good += 4 + length + 4;
+				count++;
+			}
+		}
+		catch (EOFException e) {}   // A record cut short by a crash
+		finally { in.close(); }
+		logged += count;
+		if (count > 0)
+			System.out.println(" >>>> MudJournal: replayed " + count + " changes");
+		return good;
+	}
+
+	/** Make the change described by a record, without journaling it again */
+	void apply(byte type, String[] args) {
+		try {
+			// A place arriving from another server is the only one that
+			// doesn't exist yet
+			if (type == ADOPT) { server.adopt(args[0], args[1]); return; }
+			MudPlace place = server.getPlace(args[0]);
+			if (place == null) throw new MudException.NoSuchPlace();
+			switch (type) {
+			case CREATE_THING:  place.addThing(args[1], args[2]); break;
+			case DESTROY_THING: place.removeThing(args[1]); break;
+			case CREATE_PLACE:  place.addPlace(args[1], args[2], args[3], args[4]); break;
+			case LINK:          place.addExit(args[1], args[2]); break;
+			case CLOSE:         place.removeExit(args[1]); break;
+			case JOIN:          place.addExit(args[1], server.getPlace(args[2])); break;
+			case DEPART:        server.depart(args[0]); break;
+			default:            throw new IOException("unknown record type " + type);
+			}
+		}
+		catch (Exception e) {
+			System.out.println(" >>>> MudJournal: cannot replay change to " + args[0] +
+			                   ": " + e);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+import java.rmi.*;
+import java.util.*;
+import jmud.*;
+
+/**
+ * This class resolves the destinations of exits that lead to places on
+ * other MUD servers.  Such a destination is stored in a MudPlace as a
+ * string of the form "url@placename".  Looking it up means asking the RMI
+ * registry for the other server, and then asking that server for the
+ * place, so the results are cached, and both of those round trips are only
+ * made again when the cached stubs expire or stop working.
+ *
+ * Each peer server also has a circuit breaker.  When several lookups in a
+ * row fail, the peer is assumed to be down, and for a while every attempt
+ * to reach it fails at once with LinkFailed, rather than waiting for the
+ * network to time out.  After that a single attempt is let through to see
+ * whether the peer is back.
+ *
+ * The cache is configured with system properties:
+ *   jmud.link.ttl       milliseconds a resolved stub is trusted (default 60000)
+ *   jmud.link.failures  failures in a row that open the breaker (default 3)
+ *   jmud.link.cooldown  milliseconds the breaker stays open (default 30000)
+ **/
+public class MudLinks {
+	final long ttl = Long.getLong("jmud.link.ttl", 60000);
+	final int maxFailures = Integer.getInteger("jmud.link.failures", 3);
+	final long cooldown = Long.getLong("jmud.link.cooldown", 30000);
+	final Map<String, Peer> peers = new HashMap<String, Peer>();  // url to peer
+
+	/**
+	 * Resolve a destination of the form "url@placename", using the cache
+	 * if it can.  Throws LinkFailed if the peer can't be reached or doesn't
+	 * have the place.
+	 **/
+	public RemoteMudPlace resolve(String destination) throws MudException.LinkFailed {
+		int pos = destination.indexOf('@');
+		try { return resolve(destination.substring(0, pos), destination.substring(pos+1)); }
+		catch (MudException.NoSuchPlace e) { throw new MudException.LinkFailed(); }
+	}
+
+	/**
+	 * Resolve the named place on the server registered under the url.
+	 * Throws NoSuchPlace if the server answers but has no such place, and
+	 * LinkFailed if the server can't be reached.
+	 **/
+	public RemoteMudPlace resolve(String url, String placename)
+			throws MudException.LinkFailed, MudException.NoSuchPlace {
+		Peer peer = peer(url);
+		long now = System.currentTimeMillis();
+		RemoteMudServer s;
+		synchronized(peer) {
+			// Fail fast while the breaker is open.  Once the cooldown is over,
+			// let this one attempt through, and keep the breaker open for
+			// everyone else until we know how it went.
+			if (peer.openUntil > now) throw new MudException.LinkFailed();
+			if (peer.failures >= maxFailures) peer.openUntil = now + cooldown;
+			Cached c = peer.places.get(placename);
+			if (c != null && c.expires > now) return c.place;
+			s = (peer.serverExpires > now) ? peer.server : null;
+		}
+		// Do the lookups without holding any locks
+		RemoteMudPlace place;
+		try {
+			if (s == null) s = (RemoteMudServer) Naming.lookup(url);
+			place = s.getNamedPlace(placename);
+		}
+		catch (MudException.NoSuchPlace e) { succeeded(peer, s, null, null); throw e; }
+		catch (Exception e) { failed(peer); throw new MudException.LinkFailed(); }
+		succeeded(peer, s, placename, place);
+		return place;
+	}
+
+	/**
+	 * Forget the cached stubs for a destination, because using one of them
+	 * failed with a RemoteException.  The failure counts against the peer.
+	 **/
+	public void invalidate(String destination) {
+		int pos = destination.indexOf('@');
+		Peer peer = peer(destination.substring(0, pos));
+		synchronized(peer) {
+			peer.server = null;
+			peer.serverExpires = 0;
+			peer.places.remove(destination.substring(pos+1));
+		}
+		failed(peer);
+	}
+
+	/** Return the peer for the url, creating it if necessary */
+	private Peer peer(String url) {
+		synchronized(peers) {
+			Peer p = peers.get(url);
+			if (p == null) { p = new Peer(); peers.put(url, p); }
+			return p;
+		}
+	}
+
+	/** The peer answered: close its breaker, and cache what it told us */
+	private void succeeded(Peer peer, RemoteMudServer s, String placename,
+	                       RemoteMudPlace place) {
+		long expires = System.currentTimeMillis() + ttl;
+		synchronized(peer) {
+			peer.failures = 0;
+			peer.openUntil = 0;
+			if (peer.server != s) { peer.server = s; peer.places.clear(); }
+			peer.serverExpires = expires;
+			if (place != null) peer.places.put(placename, new Cached(place, expires));
+		}
+	}
+
+	/** The peer didn't answer: count it, and open the breaker if need be */
+	private void failed(Peer peer) {
+		synchronized(peer) {
+			peer.server = null;
+			peer.serverExpires = 0;
+			peer.places.clear();
+			if (++peer.failures >= maxFailures)
+				peer.openUntil = System.currentTimeMillis() + cooldown;
+		}
+	}
+
+	/** What we know about one peer server */
+	static class Peer {
+		RemoteMudServer server;      // The server's stub, if we have one
+		long serverExpires;          // When to look the server up again
+		Map<String, Cached> places = new HashMap<String, Cached>();  // Its places
+		int failures;                // Failed attempts in a row
+		long openUntil;              // Fail fast until this time
+	}
+
+	/** A cached place stub, and when it expires */
+	static class Cached {
+		final RemoteMudPlace place;
+		final long expires;
+		Cached(RemoteMudPlace place, long expires) {
+			this.place = place;
+			this.expires = expires;
+		}
+	}
+}
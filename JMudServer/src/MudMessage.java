@@ -0,0 +1,40 @@
+/**
+ * A MudMessage is a message broadcast from a place, made once and shared
+ * by every outbox it is posted to.  A player on a telnet connection is
+ * sent the message as a line of UTF-8 bytes, and those bytes are encoded
+ * the first time a MudSession needs them and kept, so that a message to a
+ * crowded place is encoded once rather than once per player.  A message
+ * never changes once it has been made, so it needs no locking, and no
+ * counting of who still uses it: it goes when the last outbox is done
+ * with it.
+ *
+ * A person reached through RMI is still told the text: RMI marshals every
+ * call on its own, and there is no way to hand it bytes that have been
+ * serialized already.
+ **/
+public final class MudMessage {
+	final String text;              // The message
+	private volatile byte[] line;   // The message and a line end, in UTF-8
+
+	MudMessage(String text) { this.text = text; }
+
+	/**
+	 * Return the message as a line to send to a telnet client.  The array
+	 * is shared, and must not be changed.
+	 **/
+	byte[] line() {
+		byte[] b = line;
+		// Two threads may both encode it at first, which does no harm
+		if (b == null) line = b = (text + "\r\n").getBytes(MudTelnet.UTF8);
+		return b;
+	}
+
+	/** Return the text of each of the messages */
+	static String[] texts(MudMessage[] messages) {
+		String[] t = new String[messages.length];
+		for (int i=0; i<messages.length; i++) t[i] = messages[i].text;
+		return t;
+	}
+
+	public String toString() { return text; }
+}
@@ -0,0 +1,225 @@
+import java.rmi.RemoteException;
+import java.util.*;
+
+/**
+ * MudNeighbors is an index of which places on this server lead to which,
+ * used to find everybody within earshot of a shout, and the shortest way
+ * from one place to another for travel.  Searching the exits of every
+ * place on the way for each shout or journey would mean locking and
+ * copying a lot of tables in a big world, so the index keeps, for each
+ * place, the names of its exits that lead to places on this server, and
+ * of the places they lead to.  It caches the places found around the
+ * places people shout from, and the routes people have travelled.  Exits
+ * to other servers are left out: a shout isn't heard there, and nobody
+ * travels there.
+ *
+ * A place is indexed the first time a search reaches it, from its exits,
+ * or from the world file if it hasn't been built yet, so opening a world
+ * file doesn't mean indexing all of it.  MudPlace tells the index whenever
+ * it changes a table of exits, and the neighborhoods and routes found so
+ * far are forgotten then, since one new exit may bring many places within
+ * reach, or make many routes shorter.  Building is rare next to shouting
+ * and travelling, so they are soon found again.
+ *
+ * The index is configured with system properties:
+ *   jmud.shout.radius  how many exits away a shout is heard (default 2)
+ *   jmud.shout.cache   the most places whose neighborhoods are kept
+ *                      (default 1024)
+ *   jmud.travel.cache  the most routes that are kept (default 1024)
+ *   jmud.travel.limit  the most places searched for a route before giving
+ *                      up (default 100000)
+ **/
+public class MudNeighbors {
+	static final String[] NONE = new String[0];
+	static final Links NOWHERE = new Links(NONE, NONE);
+
+	final MudServer server;                 // The server whose places these are
+	final int radius = Integer.getInteger("jmud.shout.radius", 2);
+	final int cacheSize = Integer.getInteger("jmud.shout.cache", 1024);
+	final int routeCacheSize = Integer.getInteger("jmud.travel.cache", 1024);
+	final int searchLimit = Integer.getInteger("jmud.travel.limit", 100000);
+	final HashMap<String,Links> adjacent =      // Where each place's exits lead
+		new HashMap<String,Links>();
+	final LinkedHashMap<String,String[][]> rings =  // The places found around a
+		new LinkedHashMap<String,String[][]>(16, 0.75f, true) {   // place, by distance
+			protected boolean removeEldestEntry(Map.Entry<String,String[][]> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	final LinkedHashMap<String,String[]> routes =   // The exits to take from one
+		new LinkedHashMap<String,String[]>(16, 0.75f, true) {   // place to another
+			protected boolean removeEldestEntry(Map.Entry<String,String[]> eldest) {
+				return size() > routeCacheSize;
+			}
+		};
+	long generation;                        // Counts the changes to the index
+
+	MudNeighbors(MudServer server) { this.server = server; }
+
+	/**
+	 * Note that a place's exits have changed to the specified table.
+	 * MudPlace calls this while it holds the place's write lock, so this
+	 * never locks a place itself.
+	 **/
+	synchronized void changed(String placename, Map<String,Object> exits) {
+		adjacent.put(placename, links(exits));
+		rings.clear();
+		routes.clear();
+		generation++;
+	}
+
+	/** Forget a place that has gone to another server */
+	synchronized void removed(String placename) {
+		adjacent.remove(placename);
+		rings.clear();
+		routes.clear();
+		generation++;
+	}
+
+	/**
+	 * Return the places within the specified number of exits of the named
+	 * place, by distance: element 0 holds just the place itself, element 1
+	 * the places its exits lead to, and so on.  There are fewer elements
+	 * if there are no places further away.  The arrays are shared, and
+	 * must not be changed.
+	 **/
+	String[][] within(String placename, int distance) throws RemoteException {
+		String[][] found;
+		long seen;
+		synchronized(this) {
+			found = rings.get(placename);
+			seen = generation;
+		}
+		if (found == null) found = new String[][] { { placename } };
+		if (found.length > distance || found[found.length-1].length == 0)
+			return trim(found, distance);
+
+		// Carry on outwards from the furthest places found so far
+		HashSet<String> visited = new HashSet<String>();
+		for (String[] ring : found) visited.addAll(Arrays.asList(ring));
+		ArrayList<String[]> all = new ArrayList<String[]>(Arrays.asList(found));
+		while (all.size() <= distance) {
+			ArrayList<String> next = new ArrayList<String>();
+			for (String name : all.get(all.size()-1)) {
+				for (String n : adjacent(name).places)
+					if (visited.add(n)) next.add(n);
+			}
+			all.add(next.toArray(NONE));
+			if (next.isEmpty()) break;
+		}
+		found = all.toArray(new String[all.size()][]);
+		synchronized(this) {
+			if (generation == seen) rings.put(placename, found);
+		}
+		return trim(found, distance);
+	}
+
+	/** Return the first distance+1 elements of an array of rings */
+	private static String[][] trim(String[][] found, int distance) {
+		if (found.length <= distance + 1) return found;
+		return Arrays.copyOf(found, distance + 1);
+	}
+
+	/**
+	 * Return the names of the exits to take, one after another, to go from
+	 * one place on this server to another by the fewest exits, or null if
+	 * there is no way there, or none that can be found by searching
+	 * jmud.travel.limit places.  The array is shared, and must not be
+	 * changed.
+	 **/
+	String[] route(String from, String to) throws RemoteException {
+		String key = from + '\n' + to;
+		long seen;
+		synchronized(this) {
+			if (routes.containsKey(key)) return routes.get(key);
+			seen = generation;
+		}
+		// A breadth-first search, remembering the way each place was reached
+		HashMap<String,String> cameFrom = new HashMap<String,String>();
+		HashMap<String,String> by = new HashMap<String,String>();
+		ArrayDeque<String> queue = new ArrayDeque<String>();
+		cameFrom.put(from, null);
+		queue.add(from);
+		String[] found = null;
+		search:
+		while (!queue.isEmpty() && cameFrom.size() < searchLimit) {
+			String name = queue.remove();
+			Links l = adjacent(name);
+			for (int i=0; i<l.places.length; i++) {
+				String n = l.places[i];
+				if (cameFrom.containsKey(n)) continue;
+				cameFrom.put(n, name);
+				by.put(n, l.exits[i]);
+				if (n.equals(to)) {
+					// Follow the way back, then turn it around
+					ArrayList<String> way = new ArrayList<String>();
+					for (String p = to; !p.equals(from); p = cameFrom.get(p)) way.add(by.get(p));
+					Collections.reverse(way);
+					found = way.toArray(NONE);
+					break search;
+				}
+				queue.add(n);
+			}
+		}
+		synchronized(this) {
+			if (generation == seen) routes.put(key, found);
+		}
+		return found;
+	}
+
+	/**
+	 * Return the exits of the named place that lead to places on this
+	 * server, and the places they lead to, indexing the place if this is
+	 * the first time.
+	 **/
+	Links adjacent(String placename) throws RemoteException {
+		long seen;
+		synchronized(this) {
+			Links a = adjacent.get(placename);
+			if (a != null) return a;
+			seen = generation;
+		}
+		Links a = NOWHERE;
+		if (!server.departed.contains(placename)) {
+			MudPlace place = (MudPlace) server.places.get(placename);
+			MudWorldFile w = server.mapped;
+			int p;
+			if (place != null) {
+				long stamp = place.lock.readLock();
+				try { a = links(place.exits); }
+				finally { place.lock.unlockRead(stamp); }
+			}
+			else if (w != null && (p = w.find(placename)) >= 0) {
+				String[][] d = w.destinations(p);
+				a = new Links(d[0], d[1]);
+			}
+		}
+		synchronized(this) {
+			if (generation == seen) adjacent.put(placename, a);
+		}
+		return a;
+	}
+
+	/** Return the exits in a table that lead to places on this server */
+	static Links links(Map<String,Object> exits) {
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<String> places = new ArrayList<String>();
+		for (Map.Entry<String,Object> e : exits.entrySet()) {
+			Object d = e.getValue();
+			String p;
+			if (d instanceof MudPlace) p = ((MudPlace) d).placename;
+			else if (d instanceof MudWorldFile.Ref) p = ((MudWorldFile.Ref) d).name();
+			else continue;   // A string is a place on another server
+			names.add(e.getKey());
+			places.add(p);
+		}
+		return new Links(names.toArray(NONE), places.toArray(NONE));
+	}
+
+	/** The exits of a place that lead to places on this server */
+	static class Links {
+		final String[] exits;    // The names of the exits
+		final String[] places;   // The places each one leads to
+		Links(String[] exits, String[] places) { this.exits = exits; this.places = places; }
+	}
+}
@@ -0,0 +1,27 @@
+import java.util.Map;
+
+/**
+ * The numbers kept for one method of RemoteMudPlace or RemoteMudServer, as
+ * JMX sees them.  See MudStats.
+ **/
+public interface MudOperationMXBean {
+	/** How many times the method has been called */
+	long getCalls();
+
+	/** How many of those calls threw an exception */
+	long getErrors();
+
+	/** How many of each type of exception were thrown */
+	Map<String,Long> getErrorsByType();
+
+	/** How long the calls took, in microseconds */
+	double getMeanMicros();
+	double getP50Micros();
+	double getP90Micros();
+	double getP99Micros();
+	double getP999Micros();
+	double getMaxMicros();
+
+	/** Start counting afresh */
+	void reset();
+}
@@ -0,0 +1,213 @@
+import java.lang.ref.WeakReference;
+import java.rmi.RemoteException;
+import java.rmi.UnmarshalException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import jmud.*;
+
+/**
+ * A MudOutbox holds the messages waiting to be delivered to one person.
+ * The MudBroadcaster keeps one outbox per person, and a place broadcasts a
+ * message by posting it to the outbox of everyone present, which only takes
+ * a moment.  Each outbox is emptied by one courier thread at a time, so
+ * everybody receives their messages in order, while a person on a slow
+ * network only delays their own messages.
+ *
+ * Messages are coalesced.  The first message to arrive in an empty outbox
+ * waits a few milliseconds for others to join it, and everything that piles
+ * up while a delivery is in progress goes out together in the next one.
+ * A batch is delivered with a single call to tellBatch().  Clients that
+ * predate tellBatch() are detected the first time it fails, and from then
+ * on get their messages through tell(), one call per message.  A player in
+ * a MudSession on this server is handed the MudMessages themselves, so
+ * that the text each one is sent as is only encoded once.
+ *
+ * A person whose tell() call runs past the deadline, or whose outbox
+ * overflows, earns a strike.  Too many strikes in a row and they are
+ * removed from the place, just as if the call had failed with a
+ * RemoteException.  A successful delivery wipes the slate clean.  RMI can't
+ * abandon a call, so a courier still stuck in tell() when its person is
+ * removed is written off: the broadcaster starts another courier in its
+ * place, and the stuck thread leaves the pool whenever its call returns.
+ * A player in a MudSession on this server is disconnected as well, which
+ * frees a courier blocked writing to their socket at once.
+ **/
+public class MudOutbox implements Runnable {
+	final MudBroadcaster broadcaster;                 // Who we work for
+	final WeakReference<RemoteMudPerson> person;      // Who the messages are for
+	final ArrayDeque<MudMessage> messages = new ArrayDeque<MudMessage>();  // Waiting
+	final MudMessage[] one = new MudMessage[1];  // Reused for a batch of one
+	MudPlace place;        // The place that most recently sent a message here
+	boolean scheduled;     // Is a courier working on this outbox?
+	long sendingSince;     // When the tell() in progress started, or 0
+	int strikes;           // Deadlines missed since the last good delivery
+	boolean closed;        // Set once the person has been evicted
+	boolean legacy;        // Does the client only understand tell()?
+	boolean abandoned;     // Was the courier written off while in tell()?
+
+	/**
+	 * The person is only weakly referenced, so that an outbox doesn't keep
+	 * someone alive after they have left the MUD.
+	 **/
+	MudOutbox(MudBroadcaster broadcaster, RemoteMudPerson person) {
+		this.broadcaster = broadcaster;
+		this.person = new WeakReference<RemoteMudPerson>(person);
+	}
+
+	/**
+	 * Queue a message from the specified place, and start a courier on it
+	 * if one isn't already busy with this outbox.
+	 **/
+	public void post(MudPlace from, MudMessage message) {
+		boolean evict = false;
+		synchronized(this) {
+			if (closed) return;
+			place = from;
+			messages.addLast(message);
+			if (messages.size() > broadcaster.outboxDepth) {
+				messages.removeFirst();            // Too far behind: drop the oldest
+				broadcaster.dropped.incrementAndGet();
+				evict = strike();
+			}
+			if (!evict && !scheduled) {
+				scheduled = true;
+				schedule();
+			}
+		}
+		if (evict) evict();
+	}
+
+	/**
+	 * Hand this outbox to a courier once the coalescing window has passed,
+	 * giving other messages produced at about the same time a chance to
+	 * join the first one.
+	 **/
+	private void schedule() {
+		if (broadcaster.tellWindow <= 0) broadcaster.couriers.execute(this);
+		else broadcaster.watchdog.schedule(new Runnable() {
+			public void run() { broadcaster.couriers.execute(MudOutbox.this); }
+		}, broadcaster.tellWindow, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Run by a courier thread.  Deliver the waiting messages, a batch at a
+	 * time, until the outbox is empty.  If a delivery fails with a
+	 * RemoteException, assume that the person's client or network has failed
+	 * and remove them from the place.
+	 **/
+	public void run() {
+		for (;;) {
+			MudMessage[] batch;
+			boolean single;
+			RemoteMudPerson who = person.get();
+			synchronized(this) {
+				if (messages.isEmpty() || who == null || closed) {
+					messages.clear();
+					scheduled = false;
+					return;
+				}
+				int n = Math.min(messages.size(), broadcaster.tellBatch);
+				batch = (n == 1) ? one : new MudMessage[n];
+				for (int i=0; i<n; i++) batch[i] = messages.pollFirst();
+				single = legacy || n == 1;
+				sendingSince = System.currentTimeMillis();
+			}
+			broadcaster.sending.add(this);
+			boolean failed = false;
+			try {
+				if (who instanceof MudSession) ((MudSession) who).tell(batch);
+				else if (single) for (int i=0; i<batch.length; i++) who.tell(batch[i].text);
+				else send(who, MudMessage.texts(batch));
+				synchronized(this) { strikes = 0; }
+			}
+			catch (RemoteException e) { failed = true; }
+			finally {
+				one[0] = null;         // Don't keep the message alive
+				broadcaster.sending.remove(this);
+				synchronized(this) { sendingSince = 0; }
+			}
+			boolean replaced;
+			synchronized(this) { replaced = abandoned; }
+			if (replaced) {           // Another courier has taken our place
+				broadcaster.reclaim();
+				return;
+			}
+			if (failed) evict();
+		}
+	}
+
+	/**
+	 * Deliver a batch with tellBatch().  If the client doesn't have that
+	 * method, remember that, and deliver the batch with tell() instead.
+	 **/
+	private void send(RemoteMudPerson who, String[] batch) throws RemoteException {
+		try { who.tellBatch(batch); }
+		catch (RemoteException e) {
+			if (!isUnsupported(e)) throw e;
+			synchronized(this) { legacy = true; }
+			for (int i=0; i<batch.length; i++) who.tell(batch[i]);
+		}
+	}
+
+	/**
+	 * Return true if the exception is the one RMI raises when a client's
+	 * remote object has no method matching the call, possibly wrapped in
+	 * the ServerException that carries it back to us.
+	 **/
+	static boolean isUnsupported(RemoteException e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof UnmarshalException && t.getMessage() != null &&
+			    t.getMessage().indexOf("unrecognized method hash") != -1)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Called periodically by the broadcaster's watchdog while a tell() is in
+	 * progress.  Each time the call runs a full deadline past its start,
+	 * or past the last strike, it earns another strike.
+	 **/
+	void checkDeadline(long now) {
+		boolean evict;
+		synchronized(this) {
+			if (sendingSince == 0 || now - sendingSince < broadcaster.tellTimeout)
+				return;
+			sendingSince = now;
+			evict = strike();
+		}
+		if (evict) evict();
+	}
+
+	/** Record a strike, and return true if the person has run out of them */
+	private boolean strike() {
+		strikes++;
+		return strikes >= broadcaster.maxStrikes;
+	}
+
+	/**
+	 * Stop delivering to this person and remove them, silently, from the
+	 * place that last sent them a message, and close their connection if
+	 * they are playing in a MudSession.  If a courier is stuck in tell(),
+	 * write it off, so that it no longer counts against the couriers.
+	 **/
+	void evict() {
+		MudPlace from;
+		boolean stuck;
+		synchronized(this) {
+			if (closed) return;
+			closed = true;
+			messages.clear();
+			from = place;
+			stuck = abandoned = sendingSince != 0;
+		}
+		if (stuck) broadcaster.abandon();
+		RemoteMudPerson who = person.get();
+		broadcaster.forget(who, this);
+		if (who != null && from != null) {
+			try { from.exit(who, null); }
+			catch (Exception e) {}
+		}
+		if (who instanceof MudSession) ((MudSession) who).disconnect();
+	}
+}
@@ -6,7 +6,7 @@ import jmud.*;
 /**
  * This is the class which represents a Person inhabiting the
  * MUD.  It maintains only a little bit if state, and has only
- * two exported methods.
+ * three exported methods.
  **/
 public class MudPerson extends UnicastRemoteObject implements RemoteMudPerson {
 	/**
@@ -48,4 +48,14 @@ public class MudPerson extends UnicastRemoteObject implements RemoteMudPerson {
 		tellStream.println(message);
 		tellStream.flush();
 	}
+	
+	/**
+	 * Remote method that delivers several messages at once, in order.  The
+	 * server uses it to send everything that happened in the place since
+	 * the last delivery, so the stream is only flushed once.
+	 **/
+	public void tellBatch(String[] messages) throws RemoteException {
+		for (int i=0; i<messages.length; i++) tellStream.println(messages[i]);
+		tellStream.flush();
+	}
 }
@@ -3,6 +3,7 @@ import java.rmi.server.*;
 import java.rmi.registry.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.locks.StampedLock;
 import jmud.*;
 
 /**
@@ -15,17 +16,45 @@ import jmud.*;
  * names and people fields are marked transient, so they are not serialized
  * along with the place (because it wouldn't make sense to try to save
  * RemoteMudPerson objects, even if they could be serialized).
+ * Exits, things and people are kept in hash tables, so that finding one
+ * by name takes the same time however crowded the place is.  The tables
+ * are saved as the pairs of parallel vectors that older versions of this
+ * class used, so save files work with either version.
+ * All of the tables in a place are guarded by a single StampedLock.
+ * Methods that only look at the place share its read lock, so the many
+ * people looking around a crowded place never wait for each other, and
+ * methods that change the place take the write lock.  Tables are copied
+ * while the lock is held, so a caller always sees a consistent snapshot,
+ * never a table that is being changed.  The lock is not reentrant, and
+ * messages are never sent while it is held.
+ * The tables of exits and things are copy-on-write: a change makes a new
+ * table, and never alters one that has been published.  Building is rare
+ * next to looking, and it means a MudSnapshot can keep a reference to the
+ * tables instead of copying them.
+ * The descriptions of the place and its things are the copies kept by
+ * MudDescriptions, so places described alike share one copy of the text.
+ * When the MUD is split into zones across several servers, and this
+ * place's zone moves to another server (see MudZones), the place stays
+ * exported here, since clients may still hold it, but it hands everybody
+ * in it over to the place that replaced it there, and passes every remote
+ * call on to that place.
  **/
 public class MudPlace extends UnicastRemoteObject
 											implements RemoteMudPlace, Serializable {
-	String placename, description;          // information about the place itself
-	Vector exits = new Vector();            // ames of exits from this place
-	Vector destinations = new Vector();     // where the exits go to
-	Vector things = new Vector();           // names of things in this place
-	Vector descriptions = new Vector();     // descriptions of those things
-	transient Vector names = new Vector();  // names of people in this place
-	transient Vector people = new Vector(); // RemoteMudPerson objects
+	String placename;                       // information about the place itself
+	MudText description;
+	LinkedHashMap<String,Object> exits =    // exit names, and where they go to
+		new LinkedHashMap<String,Object>();
+	LinkedHashMap<String,MudText> things =  // names and descriptions of things
+		new LinkedHashMap<String,MudText>();
+	transient LinkedHashMap<RemoteMudPerson,String> people =  // people here,
+		new LinkedHashMap<RemoteMudPerson,String>();          // and their names
+	transient HashMap<String,RemoteMudPerson> names =  // the person with
+		new HashMap<String,RemoteMudPerson>();         // each name
 	MudServer server;                       // server for this place
+	transient MudBroadcaster.Lane lane;     // queue of messages to deliver here
+	transient StampedLock lock = new StampedLock();  // guards all the tables
+	transient volatile RemoteMudPlace moved;  // where this place went, if anywhere
 	
 	/** A no-arg constructor for de-serialization only.  Do not call!! */
 	public MudPlace() throws RemoteException { super(); }
@@ -39,24 +68,106 @@ public class MudPlace extends UnicastRemoteObject
 		System.out.println(" >>>> MudPlace: Constructing a place....");
 		this.server = server;
 		this.placename = placename;
-		this.description = description;
+		this.description = MudDescriptions.share(description);
 		server.setPlaceName(this, placename);  // Register the place
 	}
 	
+	/**
+	 * Constructor for a place loaded from a MudWorldFile, which registers
+	 * the place with the server itself.
+	 **/
+	MudPlace(MudServer server, String placename, String description,
+	         LinkedHashMap<String,Object> exits, LinkedHashMap<String,MudText> things)
+			throws RemoteException {
+		this.server = server;
+		this.placename = placename;
+		this.description = MudDescriptions.share(description);
+		this.exits = exits;
+		this.things = things;
+	}
+	
 	/** Remote method to return the name of the place */
-	public String getPlaceName() throws RemoteException { return placename; }
+	public String getPlaceName() throws RemoteException {
+		server.getStats().count(MudStats.Op.GET_PLACE_NAME);
+		return placename;
+	}
 	
 	/** Remote method to return the description of this place */
-	public String getDescription() throws RemoteException { return description; }
+	public String getDescription() throws RemoteException {
+		RemoteMudPlace there = moved;
+		if (there != null) return there.getDescription();
+		server.getStats().count(MudStats.Op.GET_DESCRIPTION);
+		return MudText.text(description);
+	}
 	
 	/** Remote method to return a vector of names of people in this place */
-	public Vector getNames() throws RemoteException { return names; }
+	public Vector getNames() throws RemoteException {
+		RemoteMudPlace there = moved;
+		if (there != null) return there.getNames();
+		return server.getStats().time(MudStats.Op.GET_NAMES, new MudStats.Call<Vector>() {
+			public Vector call() throws RemoteException {
+				long stamp = lock.readLock();
+				try { return new Vector(people.values()); }
+				finally { lock.unlockRead(stamp); }
+			}
+		});
+	}
 	
 	/** Remote method to return a vector of names of things */
-	public Vector getThings() throws RemoteException { return things; }
+	public Vector getThings() throws RemoteException {
+		RemoteMudPlace there = moved;
+		if (there != null) return there.getThings();
+		return server.getStats().time(MudStats.Op.GET_THINGS, new MudStats.Call<Vector>() {
+			public Vector call() throws RemoteException {
+				long stamp = lock.readLock();
+				try { return new Vector(things.keySet()); }
+				finally { lock.unlockRead(stamp); }
+			}
+		});
+	}
 	
 	/** Remote method to return a vector of names of exits from this place */
-	public Vector getExits() throws RemoteException { return exits; }
+	public Vector getExits() throws RemoteException {
+		RemoteMudPlace there = moved;
+		if (there != null) return there.getExits();
+		return server.getStats().time(MudStats.Op.GET_EXITS, new MudStats.Call<Vector>() {
+			public Vector call() throws RemoteException {
+				long stamp = lock.readLock();
+				try { return new Vector(exits.keySet()); }
+				finally { lock.unlockRead(stamp); }
+			}
+		});
+	}
+	
+	/** Return how many people are here.  This is not a remote method. */
+	int countPeople() {
+		long stamp = lock.readLock();
+		try { return people.size(); }
+		finally { lock.unlockRead(stamp); }
+	}
+	
+	/**
+	 * Remote method to return a snapshot of this place: its name and
+	 * description, and the things, people and exits here, as they all
+	 * were at one moment.
+	 **/
+	public PlaceView look() throws RemoteException {
+		RemoteMudPlace there = moved;
+		if (there != null) return there.look();
+		return server.getStats().time(MudStats.Op.LOOK, new MudStats.Call<PlaceView>() {
+			public PlaceView call() throws RemoteException {
+				long stamp = lock.readLock();
+				try {
+					return new PlaceView(MudPlace.this, server.getMudName(), placename,
+					                     MudText.text(description),
+					                     new Vector(things.keySet()),
+					                     new Vector(people.values()),
+					                     new Vector(exits.keySet()));
+				}
+				finally { lock.unlockRead(stamp); }
+			}
+		});
+	}
 	
 	/**
 	 * Remote method to return a RemoteMudPerson object corresponding to
@@ -64,12 +175,20 @@ public class MudPlace extends UnicastRemoteObject
 	 **/
 	public RemoteMudPerson getPerson(String name)
 			throws RemoteException, MudException.NoSuchPerson {
-		synchronized(names) {
-			// what about when there are 2 of the same name?
-			int i = names.indexOf(name);
-			if (i == -1) throw new MudException.NoSuchPerson();
-			return (RemoteMudPerson) people.elementAt(i);
-		}
+		RemoteMudPlace there = moved;
+		if (there != null) return there.getPerson(name);
+		return server.getStats().time(MudStats.Op.GET_PERSON, new MudStats.Call<RemoteMudPerson>() {
+			public RemoteMudPerson call() throws RemoteException, MudException.NoSuchPerson {
+				long stamp = lock.readLock();
+				try {
+					// If there are 2 of the same name, this is the first one to arrive
+					RemoteMudPerson who = names.get(name);
+					if (who == null) throw new MudException.NoSuchPerson();
+					return who;
+				}
+				finally { lock.unlockRead(stamp); }
+			}
+		});
 	}
 	
 	/**
@@ -77,11 +196,19 @@ public class MudPlace extends UnicastRemoteObject
 	 * throws an exception if no such thing exists.
 	 **/
 	public String examineThing(String name) throws RemoteException, MudException.NoSuchThing {
-		synchronized(things) {
-			int i = things.indexOf(name);
-			if (i == -1) throw new MudException.NoSuchThing();
-			return (String) descriptions.elementAt(i);
-		}
+		RemoteMudPlace there = moved;
+		if (there != null) return there.examineThing(name);
+		return server.getStats().time(MudStats.Op.EXAMINE_THING, new MudStats.Call<String>() {
+			public String call() throws RemoteException, MudException.NoSuchThing {
+				long stamp = lock.readLock();
+				try {
+					MudText d = things.get(name);
+					if (d == null) throw new MudException.NoSuchThing();
+					return d.toString();
+				}
+				finally { lock.unlockRead(stamp); }
+			}
+		});
 	}
 	
 	/**
@@ -94,51 +221,161 @@ public class MudPlace extends UnicastRemoteObject
 	 **/
 	public RemoteMudPlace go(RemoteMudPerson who, String direction)
 			throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchExit, MudException.LinkFailed {
-		//make sure the direction is valid, and get destination if it is
-		Object destination;
-		synchronized(exits) {
-			int i = exits.indexOf(direction);
-			if (i == -1) throw new MudException.NoSuchExit();
-			destination = destinations.elementAt(i);
-		}
-		
-		// If destination is a string, it is a place on another server, so connect
-		// to that server.  Otherwise, it is a place already on this server.
-		// Throw an exception if we cannot connect to the other server.
-		RemoteMudPlace newplace;
-		if (destination instanceof String) {
-			try {
-				String t = (String) destination;
-				int pos = t.indexOf('@');
-				String url = t.substring(0, pos);
-				String placename = t.substring(pos+1);
-				RemoteMudServer s = (RemoteMudServer) Naming.lookup(url);
-				newplace = s.getNamedPlace(placename);
+		RemoteMudPlace there = moved;
+		if (there != null) return there.go(who, direction);
+		return server.getStats().time(MudStats.Op.GO, new MudStats.Call<RemoteMudPlace>() {
+			public RemoteMudPlace call() throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchExit, MudException.LinkFailed {
+				//make sure the direction is valid, and get destination if it is
+				Object destination;
+				long stamp = lock.readLock();
+				try { destination = exits.get(direction); }
+				finally { lock.unlockRead(stamp); }
+				if (destination == null) throw new MudException.NoSuchExit();
+			
+				// If destination is a string, it is a place on another server, so connect
+				// to that server.  Otherwise, it is a place already on this server.
+				// Throw an exception if we cannot connect to the other server.  The
+				// server's MudLinks caches the connection, and fails at once if the
+				// other server is known to be down.
+				RemoteMudPlace newplace;
+				if (destination instanceof String)
+					newplace = server.getLinks().resolve((String) destination);
+				// If it is a Ref, it is a local place that hasn't been loaded yet
+				else if (destination instanceof MudWorldFile.Ref)
+					newplace = ((MudWorldFile.Ref) destination).place();
+				// Otherwise, it is a local Place
+				else newplace = (RemoteMudPlace) destination;
+			
+				// Make sure the person is here and get their name.
+				// Throw an exception if they are not here.
+				String name = verifyPresence(who);
+			
+				// Move the person out of here, and tell everyone present about it
+				MudPlace.this.exit(who, name + " has gone " + direction);
+			
+				// Put the person in the new Place.
+				// Send a message to everyone present in the new place.
+				String fromwhere;
+				if (newplace instanceof MudPlace)  // going to a local place
+					fromwhere = placename;
+				else
+					fromwhere = server.getMudName() + "." + placename;
+				String message = name + " has arrived from: " + fromwhere;
+				if (destination instanceof String) {
+					// The cached place on the other server may have gone stale, if
+					// that server has been restarted.  If entering it fails, look it
+					// up afresh and try once more.  If that fails too, bring the
+					// person back here, and tell them the exit isn't working.
+					try { newplace.enter(who, name, message); }
+					catch (RemoteException e) {
+						MudLinks links = server.getLinks();
+						links.invalidate((String) destination);
+						try {
+							newplace = links.resolve((String) destination);
+							newplace.enter(who, name, message);
+						}
+						catch (MudException.AlreadyThere ex) { throw ex; }
+						catch (Exception ex) {
+							if (ex instanceof RemoteException) links.invalidate((String) destination);
+							try { enter(who, name, null); }
+							catch (MudException.AlreadyThere a) {}
+							throw new MudException.LinkFailed();
+						}
+					}
+				}
+				else newplace.enter(who, name, message);
+			
+				// Return the new RemoteMudPlace object to the client so they
+				// know where they are now at.
+				return newplace;
 			}
-			catch (Exception e) { throw new MudException.LinkFailed(); }
-		}
-		// If the destination is not a string, then it is a local Place
-		else newplace = (RemoteMudPlace) destination;
-		
-		// Make sure the person is here and get their name.
-		// Throw an exception if they are not here.
-		String name = verifyPresence(who);
-		
-		// Move the person out of here, and tell everyone present about it
-		this.exit(who, name + " has gone " + direction);
-		
-		// Put the person in the new Place.
-		// Send a message to everyone present in the new place.
-		String fromwhere;
-		if (newplace instanceof MudPlace)  // going to a local place
-			fromwhere = placename;
-		else
-			fromwhere = server.getMudName() + "." + placename;
-		newplace.enter(who, name, name + " has arrived from: " + fromwhere);
-		
-		// Return the new RemoteMudPlace object to the client so they
-		// know where they are now at.
-		return newplace;
+		});
+	}
+	
+	/**
+	 * Return true if the named exit leads to a place on another server.
+	 * This is not a remote method.
+	 **/
+	boolean leadsAway(String direction) {
+		if (moved != null) return true;   // Everything here is elsewhere now
+		long stamp = lock.readLock();
+		try { return exits.get(direction) instanceof String; }
+		finally { lock.unlockRead(stamp); }
+	}
+	
+	/**
+	 * Remote method that does the same thing as go(), but returns a view of
+	 * the new place rather than just the place, so that the client doesn't
+	 * have to make another call to look around.  If the new place is on
+	 * another server, this server asks it for the view.
+	 **/
+	public PlaceView goAndLook(RemoteMudPerson who, String direction)
+			throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchExit, MudException.LinkFailed {
+		RemoteMudPlace there = moved;
+		if (there != null) return there.goAndLook(who, direction);
+		return server.getStats().time(MudStats.Op.GO_AND_LOOK, new MudStats.Call<PlaceView>() {
+			public PlaceView call() throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchExit, MudException.LinkFailed {
+				return go(who, direction).look();
+			}
+		});
+	}
+	
+	/**
+	 * Remote method that takes a person straight to the named place, if it
+	 * can be reached from here through exits on this server, and returns a
+	 * view of it.  The person isn't walked through the places in between:
+	 * only the people here see them leave, by the first exit on the way, and
+	 * only the people there see them arrive.  Throws NoSuchPlace if there is
+	 * no such place on this server, or no way to get there.
+	 **/
+	public PlaceView travel(RemoteMudPerson who, String placename)
+			throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchPlace {
+		RemoteMudPlace there = moved;
+		if (there != null) return there.travel(who, placename);
+		return travelTo(who, placename).getView();
+	}
+	
+	/**
+	 * Take a person to the named place, as travel() does, and return what
+	 * the "travel" command shows them: the exits they went by, and a view of
+	 * where they are now.  If this place has moved to another server, the
+	 * command is carried out there instead.  This is not a remote method.
+	 **/
+	MudResult journey(RemoteMudPerson who, String placename)
+			throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchPlace {
+		RemoteMudPlace there = moved;
+		if (there != null) return there.execute(who, "travel " + placename, null);
+		return travelTo(who, placename);
+	}
+	
+	/** Carry out travel() and journey(), here */
+	private MudResult travelTo(RemoteMudPerson who, String placename)
+			throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchPlace {
+		return server.getStats().time(MudStats.Op.TRAVEL, new MudStats.Call<MudResult>() {
+			public MudResult call() throws RemoteException, MudException.NotThere, MudException.AlreadyThere, MudException.NoSuchPlace {
+				if (placename.equals(MudPlace.this.placename)) throw new MudException.AlreadyThere();
+				String[] route = route(placename);
+				MudPlace destination = server.getPlace(placename);
+				if (destination == null) throw new MudException.NoSuchPlace();
+				String name = verifyPresence(who);
+				MudPlace.this.exit(who, name + " has gone " + route[0]);
+				destination.enter(who, name, name + " has arrived from: " + MudPlace.this.placename);
+				return new MudResult("You go " + String.join(", ", route) + ".",
+				                     destination.look(), null, null, null, false);
+			}
+		});
+	}
+	
+	/**
+	 * Return the exits to take, one after another, to get from here to the
+	 * named place by the fewest exits, as found by the server's MudNeighbors.
+	 * Throws NoSuchPlace if there is no way there.  This is not a remote
+	 * method.
+	 **/
+	String[] route(String placename) throws RemoteException, MudException.NoSuchPlace {
+		String[] route = server.getNeighbors().route(this.placename, placename);
+		if (route == null) throw new MudException.NoSuchPlace();
+		return route;
 	}
 	
 	/**
@@ -147,8 +384,15 @@ public class MudPlace extends UnicastRemoteObject
 	 **/
 	public void speak(RemoteMudPerson speaker, String msg)
 			throws RemoteException, MudException.NotThere {
-		String name = verifyPresence(speaker);
-		tellEveryone(name + ": " + msg);
+		RemoteMudPlace there = moved;
+		if (there != null) { there.speak(speaker, msg); return; }
+		server.getStats().time(MudStats.Op.SPEAK, new MudStats.Call<Void>() {
+			public Void call() throws RemoteException, MudException.NotThere {
+				String name = verifyPresence(speaker);
+				tellEveryone(name + ": " + msg);
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -157,8 +401,34 @@ public class MudPlace extends UnicastRemoteObject
 	 **/
 	public void act(RemoteMudPerson actor,  String msg)
 			throws RemoteException, MudException.NotThere {
-		String name = verifyPresence(actor);
-		tellEveryone(name + " " + msg);
+		RemoteMudPlace there = moved;
+		if (there != null) { there.act(actor, msg); return; }
+		server.getStats().time(MudStats.Op.ACT, new MudStats.Call<Void>() {
+			public Void call() throws RemoteException, MudException.NotThere {
+				String name = verifyPresence(actor);
+				tellEveryone(name + " " + msg);
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Remote method sends a message to everyone in the room, and to everyone
+	 * in the places on this server within a few exits of it, who are told
+	 * where it came from.  Requires that the speaker be in this place.
+	 **/
+	public void shout(RemoteMudPerson speaker, String msg)
+			throws RemoteException, MudException.NotThere {
+		RemoteMudPlace there = moved;
+		if (there != null) { there.shout(speaker, msg); return; }
+		server.getStats().time(MudStats.Op.SHOUT, new MudStats.Call<Void>() {
+			public Void call() throws RemoteException, MudException.NotThere {
+				String name = verifyPresence(speaker);
+				tellNearby(name + " shouts: " + msg,
+				           name + " shouts, from " + placename + ": " + msg);
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -168,17 +438,19 @@ public class MudPlace extends UnicastRemoteObject
 	public void createThing(RemoteMudPerson creator, String name,
 													String description)
 			throws RemoteException, MudException.NotThere, MudException.AlreadyThere {
-		// Make sure the creator is here
-		String creatorname = verifyPresence(creator);
-		synchronized(things) {
-			// Make sure there isn't already something with this name
-			if (things.indexOf(name) != -1) throw new MudException.AlreadyThere();
-			// Add the thing name and descriptions to the appropriate lists
-			things.addElement(name);
-			descriptions.addElement(description);
-		}
-		// Tell everyonr about the new thing and its creator
-		tellEveryone(creatorname + " has created a " + name);
+		RemoteMudPlace there = moved;
+		if (there != null) { there.createThing(creator, name, description); return; }
+		server.getStats().time(MudStats.Op.CREATE_THING, new MudStats.Call<Void>() {
+			public Void call() throws RemoteException, MudException.NotThere, MudException.AlreadyThere {
+				// Make sure the creator is here
+				String creatorname = verifyPresence(creator);
+				// Add the thing, and wait for the change to be journaled
+				server.awaitDurable(addThing(name, description));
+				// Tell everyonr about the new thing and its creator
+				tellEveryone(creatorname + " has created a " + name);
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -188,18 +460,19 @@ public class MudPlace extends UnicastRemoteObject
 	 **/
 	public void destroyThing(RemoteMudPerson destroyer, String thing)
 			throws RemoteException, MudException.NotThere, MudException.NoSuchThing {
-		// Verify the destroyer is here
-		String name = verifyPresence(destroyer);
-		synchronized(things) {
-			// Verify that there is a thing by that name in this room.
-			int i = things.indexOf(thing);
-			if (i == -1) throw new MudException.NoSuchThing();
-			// And remove its name and description from their lists
-			things.removeElementAt(i);
-			descriptions.removeElementAt(i);	
-		}
-		// Let everyone know of the demise of this thing.
-		tellEveryone(name + " had destroyed the " + thing);
+		RemoteMudPlace there = moved;
+		if (there != null) { there.destroyThing(destroyer, thing); return; }
+		server.getStats().time(MudStats.Op.DESTROY_THING, new MudStats.Call<Void>() {
+			public Void call() throws RemoteException, MudException.NotThere, MudException.NoSuchThing {
+				// Verify the destroyer is here
+				String name = verifyPresence(destroyer);
+				// Remove the thing, and wait for the change to be journaled
+				server.awaitDurable(removeThing(thing));
+				// Let everyone know of the demise of this thing.
+				tellEveryone(name + " had destroyed the " + thing);
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -212,22 +485,22 @@ public class MudPlace extends UnicastRemoteObject
 	public void createPlace(RemoteMudPerson creator, String exit, String entrance,
 	                        String name, String description)
 			throws RemoteException, MudException.NotThere, MudException.ExitAlreadyExists, MudException.PlaceAlreadyExists {
-		// Verify the creator is actually in this place
-		String creatorname = verifyPresence(creator);
-		synchronized(exits) {  // Only allow one client to change exits at a time
-			// Check that the exit doesn't already exist
-			if (exits.indexOf(exit) != -1) throw new MudException.ExitAlreadyExists();
-			// Create the new place, registering its name with the server
-			MudPlace destination = new MudPlace(server, name, description);
-			// Link from there back to here
-			destination.exits.addElement(entrance);
-			destination.destinations.addElement(this);
-			// And link from here to there
-			exits.addElement(exit);
-			destinations.addElement(destination);
-		}
-		// Let everyone know about the new exit, and the new place beyond
-		tellEveryone(creatorname + " has created a new place: " + exit);
+		RemoteMudPlace there = moved;
+		if (there != null) { there.createPlace(creator, exit, entrance, name, description); return; }
+		server.getStats().time(MudStats.Op.CREATE_PLACE, new MudStats.Call<Void>() {
+			public Void call() throws RemoteException, MudException.NotThere, MudException.ExitAlreadyExists, MudException.PlaceAlreadyExists {
+				// Verify the creator is actually in this place
+				String creatorname = verifyPresence(creator);
+				// If the MUD is split into zones, make sure the new place's zone
+				// is served here
+				if (server.zones != null) server.zones.claim(name);
+				// Create and link the place, and wait for the change to be journaled
+				server.awaitDurable(addPlace(exit, entrance, name, description));
+				// Let everyone know about the new exit, and the new place beyond
+				tellEveryone(creatorname + " has created a new place: " + exit);
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -240,33 +513,31 @@ public class MudPlace extends UnicastRemoteObject
 	public void linkTo(RemoteMudPerson linker, String exit,
 										 String hostname, String mudname, String placename)
 			throws RemoteException, MudException.NotThere, MudException.ExitAlreadyExists, MudException.NoSuchPlace {
-		// Verify linker is actually here
-		String name = verifyPresence(linker);
-		
-		// Check that the link target actually exists.  Throw NoSuchPlace if not.
-		// Note that NoSuchPlace may also mean "NoSuchMud" or "MudNotResponding".
-		String url = "rmi://" + hostname + '/' + MudException.mudPrefix + mudname;
-		try {
-			RemoteMudServer s = (RemoteMudServer) Naming.lookup(url);
-			RemoteMudPlace destination = s.getNamedPlace(placename);
-		}
-		catch (Exception e) { throw new MudException.NoSuchPlace(); }
-		
-		synchronized(exits)  {
-			// Check that the exit doesn't already exist
-			if (exits.indexOf(exit) != -1) throw new MudException.ExitAlreadyExists();
-			// Add the exit to the list of exit names
-			exits.addElement(exit);
-			// And add the destination to the list of destinations.  Note that
-			// the destination is stored as a string rather than as a RemoteMudPlace.
-			// This is because if the remote server goes down then comes back up
-			// again, a RemoteMudPlace is not valid, but the string still is.
-			destinations.addElement(url + '@' + placename);
-		}
-		// Let everyone know about the new exit and where it leads
-		tellEveryone(name + " had linked " + exit + " to " +
-								 "'" + placename + "' in MUD '" + mudname +
-								 "' on host " + hostname);
+		RemoteMudPlace there = moved;
+		if (there != null) { there.linkTo(linker, exit, hostname, mudname, placename); return; }
+		server.getStats().time(MudStats.Op.LINK_TO, new MudStats.Call<Void>() {
+			public Void call() throws RemoteException, MudException.NotThere, MudException.ExitAlreadyExists, MudException.NoSuchPlace {
+				// Verify linker is actually here
+				String name = verifyPresence(linker);
+			
+				// Check that the link target actually exists.  Throw NoSuchPlace if not.
+				// Note that NoSuchPlace may also mean "NoSuchMud" or "MudNotResponding".
+				String url = "rmi://" + hostname + '/' + MudException.mudPrefix + mudname;
+				try { server.getLinks().resolve(url, placename); }
+				catch (MudException.LinkFailed e) { throw new MudException.NoSuchPlace(); }
+			
+				// Add the exit, and wait for the change to be journaled.  Note that
+				// the destination is stored as a string rather than as a RemoteMudPlace.
+				// This is because if the remote server goes down then comes back up
+				// again, a RemoteMudPlace is not valid, but the string still is.
+				server.awaitDurable(addExit(exit, url + '@' + placename));
+				// Let everyone know about the new exit and where it leads
+				tellEveryone(name + " had linked " + exit + " to " +
+										 "'" + placename + "' in MUD '" + mudname +
+										 "' on host " + hostname);
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -277,18 +548,19 @@ public class MudPlace extends UnicastRemoteObject
 	 **/
 	public void close(RemoteMudPerson who, String exit)
 			throws RemoteException, MudException.NotThere, MudException.NoSuchExit {
-		// Check that the person closing the exit is actually here.
-		String name = verifyPresence(who);
-		synchronized(exits) {
-			// Check that the exit exists.
-			int i = exits.indexOf(exit);
-			if (i == -1) throw new MudException.NoSuchExit();
-			// Remove it and its associated destination.
-			exits.removeElementAt(i);
-			destinations.removeElementAt(i);
-		}
-		// Let everyone know that the exit doesn't exist anymore
-		tellEveryone(name + " has closed exit " + exit);
+		RemoteMudPlace there = moved;
+		if (there != null) { there.close(who, exit); return; }
+		server.getStats().time(MudStats.Op.CLOSE, new MudStats.Call<Void>() {
+			public Void call() throws RemoteException, MudException.NotThere, MudException.NoSuchExit {
+				// Check that the person closing the exit is actually here.
+				String name = verifyPresence(who);
+				// Remove the exit, and wait for the change to be journaled
+				server.awaitDurable(removeExit(exit));
+				// Let everyone know that the exit doesn't exist anymore
+				tellEveryone(name + " has closed exit " + exit);
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -299,15 +571,35 @@ public class MudPlace extends UnicastRemoteObject
 	 * quits.  The client should not allow the user to invoke it directly.
 	 **/
 	public void exit(RemoteMudPerson who, String message) throws RemoteException {
-		String name;
-		synchronized(names) {
-			int i = people.indexOf(who);
-			if (i == -1) return;
-			name = (String) names.elementAt(i);
-			names.removeElementAt(i);
-			people.removeElementAt(i);
+		RemoteMudPlace there = moved;
+		if (there != null) {
+			try { there.exit(who, message); }
+			catch (MudException.NotThere e) {}   // Not here either, then
+			return;
 		}
-		if (message != null) tellEveryone(name + ": " + message);
+		server.getStats().time(MudStats.Op.EXIT, new MudStats.Call<Void>() {
+			public Void call() throws RemoteException {
+				String name;
+				long stamp = lock.writeLock();
+				try {
+					name = people.remove(who);
+					if (name == null) return null;
+					// If the name now belongs to nobody, but someone else here has the
+					// same name, the name passes on to them.
+					if (who.equals(names.get(name))) {
+						names.remove(name);
+						if (people.size() > names.size()) {
+							for (Map.Entry<RemoteMudPerson,String> e : people.entrySet()) {
+								if (e.getValue().equals(name)) { names.put(name, e.getKey()); break; }
+							}
+						}
+					}
+				}
+				finally { lock.unlockWrite(stamp); }
+				if (message != null) tellEveryone(name + ": " + message);
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -323,15 +615,32 @@ public class MudPlace extends UnicastRemoteObject
 	 **/
 	public void enter(RemoteMudPerson who, String name, String message)
 			throws RemoteException, MudException.AlreadyThere {
-		// Send the message to everyone in this place.
-		if (message != null) tellEveryone(name + ": " + message);
-		
-		// Add person to this place
-		synchronized(names) {
-			if (people.indexOf(who) != -1) throw new MudException.AlreadyThere();
-			names.addElement(name);
-			people.addElement(who);
-		}
+		RemoteMudPlace there = moved;
+		if (there != null) { there.enter(who, name, message); return; }
+		server.getStats().time(MudStats.Op.ENTER, new MudStats.Call<Void>() {
+			public Void call() throws RemoteException, MudException.AlreadyThere {
+				// Send the message to everyone in this place.
+				if (message != null) tellEveryone(name + ": " + message);
+			
+				// A person who logged in to this server is told things directly
+				if (who instanceof InboxPerson) server.attach((InboxPerson) who);
+				// Add person to this place, unless it has moved to another server
+				// while this waited for the lock, and send them on there if it has
+				RemoteMudPlace gone;
+				long stamp = lock.writeLock();
+				try {
+					gone = moved;
+					if (gone == null) {
+						if (people.containsKey(who)) throw new MudException.AlreadyThere();
+						people.put(who, name);
+						if (!names.containsKey(name)) names.put(name, who);
+					}
+				}
+				finally { lock.unlockWrite(stamp); }
+				if (gone != null) gone.enter(who, name, message);
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -339,42 +648,342 @@ public class MudPlace extends UnicastRemoteObject
 	 * in which this place exists.  The client should not allow the
 	 * user to invoke this method directly.
 	 **/
-	public RemoteMudServer getServer() throws RemoteException { return server; }
+	public RemoteMudServer getServer() throws RemoteException {
+		RemoteMudPlace there = moved;
+		if (there != null) return there.getServer();
+		server.getStats().count(MudStats.Op.GET_SERVER);
+		return server;
+	}
+	
+	/**
+	 * Remote method that carries out a command typed by a person here, with
+	 * MudCommands, and returns all there is to show for it in one call.
+	 **/
+	public MudResult execute(RemoteMudPerson who, String command, String[] answers)
+			throws RemoteException {
+		RemoteMudPlace there = moved;
+		if (there != null) return there.execute(who, command, answers);
+		return server.getStats().time(MudStats.Op.EXECUTE, new MudStats.Call<MudResult>() {
+			public MudResult call() throws RemoteException {
+				return MudCommands.execute(MudPlace.this, who, command, answers);
+			}
+		});
+	}
+	
+	/**
+	 * Add a thing to this place.  This, and the four methods after it, make
+	 * the changes to the world that the remote methods above ask for, without
+	 * checking who is asking or telling anyone about it.  The MudJournal
+	 * replays changes through them too.  Each one holds the server's world
+	 * lock (shared with other changes) and this place's write lock while it
+	 * makes its change and records it in the journal.  It returns the
+	 * journal's sequence number for the record, or 0 if there is no journal.
+	 **/
+	long addThing(String name, String description) throws MudException.AlreadyThere {
+		server.world.readLock().lock();
+		long stamp = lock.writeLock();
+		try {
+			// Make sure there isn't already something with this name
+			if (things.containsKey(name)) throw new MudException.AlreadyThere();
+			byte[] r = server.encode(MudJournal.CREATE_THING, placename, name, description);
+			// Add the thing name and description to a new table
+			LinkedHashMap<String,MudText> t = new LinkedHashMap<String,MudText>(things);
+			t.put(name, MudDescriptions.share(description));
+			things = t;
+			MudIndex i = server.index;
+			if (i != null) i.addThing(placename, name, description);
+			return server.record(r);
+		}
+		finally {
+			lock.unlockWrite(stamp);
+			server.world.readLock().unlock();
+		}
+	}
+	
+	/** Remove a thing from this place */
+	long removeThing(String thing) throws MudException.NoSuchThing {
+		server.world.readLock().lock();
+		long stamp = lock.writeLock();
+		try {
+			// Verify that there is a thing by that name in this room,
+			// and remove its name and description from a new table.
+			if (!things.containsKey(thing)) throw new MudException.NoSuchThing();
+			byte[] r = server.encode(MudJournal.DESTROY_THING, placename, thing);
+			LinkedHashMap<String,MudText> t = new LinkedHashMap<String,MudText>(things);
+			t.remove(thing);
+			things = t;
+			MudIndex i = server.index;
+			if (i != null) i.removeThing(placename, thing);
+			return server.record(r);
+		}
+		finally {
+			lock.unlockWrite(stamp);
+			server.world.readLock().unlock();
+		}
+	}
+	
+	/** Create a new place, with exits from here to there and back */
+	long addPlace(String exit, String entrance, String name, String description)
+			throws RemoteException, MudException.ExitAlreadyExists, MudException.PlaceAlreadyExists {
+		server.world.readLock().lock();
+		long stamp = lock.writeLock();  // Only allow one client to change exits at a time
+		try {
+			// Check that the exit doesn't already exist
+			if (exits.containsKey(exit)) throw new MudException.ExitAlreadyExists();
+			byte[] r = server.encode(MudJournal.CREATE_PLACE, placename, exit, entrance,
+			                         name, description);
+			// Create the new place, registering its name with the server
+			MudPlace destination = new MudPlace(server, name, description);
+			MudIndex i = server.index;
+			if (i != null) i.addPlace(name, description);
+			// Link from there back to here
+			long there = destination.lock.writeLock();
+			try {
+				LinkedHashMap<String,Object> e =
+					new LinkedHashMap<String,Object>(destination.exits);
+				e.put(entrance, this);
+				destination.exits = e;
+				destination.exitsChanged();
+			}
+			finally { destination.lock.unlockWrite(there); }
+			// And link from here to there
+			LinkedHashMap<String,Object> e = new LinkedHashMap<String,Object>(exits);
+			e.put(exit, destination);
+			exits = e;
+			exitsChanged();
+			return server.record(r);
+		}
+		finally {
+			lock.unlockWrite(stamp);
+			server.world.readLock().unlock();
+		}
+	}
+	
+	/** Add an exit to a place on another server, given as "url@placename" */
+	long addExit(String exit, String destination) throws MudException.ExitAlreadyExists {
+		server.world.readLock().lock();
+		long stamp = lock.writeLock();
+		try {
+			// Check that the exit doesn't already exist
+			if (exits.containsKey(exit)) throw new MudException.ExitAlreadyExists();
+			byte[] r = server.encode(MudJournal.LINK, placename, exit, destination);
+			LinkedHashMap<String,Object> e = new LinkedHashMap<String,Object>(exits);
+			e.put(exit, destination);
+			exits = e;
+			exitsChanged();
+			return server.record(r);
+		}
+		finally {
+			lock.unlockWrite(stamp);
+			server.world.readLock().unlock();
+		}
+	}
+	
+	/** Add an exit to another place on this server */
+	long addExit(String exit, MudPlace destination) throws MudException.ExitAlreadyExists {
+		server.world.readLock().lock();
+		long stamp = lock.writeLock();
+		try {
+			if (exits.containsKey(exit)) throw new MudException.ExitAlreadyExists();
+			byte[] r = server.encode(MudJournal.JOIN, placename, exit, destination.placename);
+			LinkedHashMap<String,Object> e = new LinkedHashMap<String,Object>(exits);
+			e.put(exit, destination);
+			exits = e;
+			exitsChanged();
+			return server.record(r);
+		}
+		finally {
+			lock.unlockWrite(stamp);
+			server.world.readLock().unlock();
+		}
+	}
+	
+	/** Remove an exit from this place */
+	long removeExit(String exit) throws MudException.NoSuchExit {
+		server.world.readLock().lock();
+		long stamp = lock.writeLock();
+		try {
+			// Check that the exit exists, and remove it and its
+			// associated destination from a new table.
+			if (!exits.containsKey(exit)) throw new MudException.NoSuchExit();
+			byte[] r = server.encode(MudJournal.CLOSE, placename, exit);
+			LinkedHashMap<String,Object> e = new LinkedHashMap<String,Object>(exits);
+			e.remove(exit);
+			exits = e;
+			exitsChanged();
+			return server.record(r);
+		}
+		finally {
+			lock.unlockWrite(stamp);
+			server.world.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Tell the server's index of which places lead to which, if it has
+	 * one, that the exits here have changed.  The caller holds this place's
+	 * write lock.
+	 **/
+	void exitsChanged() {
+		MudNeighbors n = server.neighbors;
+		if (n != null) n.changed(placename, exits);
+	}
 	
 	/**
-	 * Create and start a thread that sends out a message to everyone
-	 * in this place.  If it gets a RemoteException talking to a person.
-	 * it silently removes that person from this place.  This is not
+	 * Close an exit by itself after the specified number of milliseconds,
+	 * like a door swinging shut, and tell everyone here.  If the exit has
+	 * been closed meanwhile, or this place has moved to another server,
+	 * nothing happens.  Return the timer, which can cancel it.  This is not
+	 * a remote method.
+	 **/
+	MudScheduler.Timer closeLater(final String exit, long millis) {
+		return server.getScheduler().schedule(millis, new Runnable() {
+			public void run() {
+				if (moved != null) return;
+				try { removeExit(exit); }
+				catch (MudException.NoSuchExit e) { return; }
+				tellEveryone("The " + exit + " exit has closed");
+			}
+		});
+	}
+	
+	/**
+	 * Put a thing back here after the specified number of milliseconds,
+	 * say once it has been destroyed, and tell everyone here.  If there is
+	 * a thing by that name here by then, or this place has moved to another
+	 * server, nothing happens.  Return the timer, which can cancel it.  This
+	 * is not a remote method.
+	 **/
+	MudScheduler.Timer respawnLater(final String thing, final String description, long millis) {
+		return server.getScheduler().schedule(millis, new Runnable() {
+			public void run() {
+				if (moved != null) return;
+				try { addThing(thing, description); }
+				catch (MudException.AlreadyThere e) { return; }
+				tellEveryone("A " + thing + " has appeared");
+			}
+		});
+	}
+	
+	/**
+	 * Send out a message to everyone in this place.  The message is handed
+	 * to this place's lane in the server's MudBroadcaster, which delivers
+	 * it on a shared worker thread, after any earlier messages sent from
+	 * this place.  If it gets a RemoteException talking to a person, or
+	 * they keep missing the delivery deadline, it silently removes that
+	 * person from this place.  This is not
 	 * a remote method, but is used internally by a number of remote
 	 * methods.
 	 **/
 	protected void tellEveryone(final String message) {
-		// If there is no-one here, don't bother sending the message!
-		if (people.size() == 0) return;
+		// If there is no-one here, don't bother sending the message!  An
+		// optimistic read is enough to find that out without locking.
+		long stamp = lock.tryOptimisticRead();
+		if (people.isEmpty() && lock.validate(stamp)) return;
 		// Make a copy of the people here now.  The message is sent asynchronously
 		// and the list of people in the room may change before the message is
 		// sent to everyone.
-		final Vector recipients = (Vector) people.clone();
-		// Create and start a thread to send the message, using  an anonymous
-		// class.  We do this because sending the message to everyone in this
-		// place might take some time, (particularly on a slow or flaky network)
-		// and we don't want to wait.
-		new Thread() {
+		final Vector recipients;
+		stamp = lock.readLock();
+		try { recipients = new Vector(people.keySet()); }
+		finally { lock.unlockRead(stamp); }
+		if (recipients.size() == 0) return;
+		// Queue the delivery, using an anonymous class.  We do this because
+		// sending the message to everyone in this place might take some time,
+		// (particularly on a slow or flaky network) and we don't want to wait.
+		getLane().submit(new Runnable() {
 			public void run() {
-				// Loop through the recipients
-				for (int i=0; i<recipients.size(); i++) {
-					RemoteMudPerson person = (RemoteMudPerson) recipients.elementAt(i);
-					// Try to send the message to each one
-					try { person.tell(message); }
-					// If it fails, assume that that person's client or network has
-					// failed, and silently remove them from this place.
-					catch (RemoteException e) {
-						try { MudPlace.this.exit(person, null); }
-						catch (Exception ex) {}
-					}
+				// Post the message to each recipient's outbox.  The couriers
+				// deliver it to all of them at once, and silently remove anyone
+				// whose client or network has failed or fallen too far behind.
+				server.getBroadcaster().deliver(MudPlace.this, recipients, message);
+			}
+		});
+	}
+	
+	/**
+	 * Send out a message to everyone in this place, and another to everyone
+	 * in the places within earshot, which the server's MudNeighbors finds.
+	 * Everybody is sent one message, however many ways there are to reach
+	 * them from here, and the messages are queued in this place's lane, so
+	 * they come after anything said here before.  This is not a remote
+	 * method.
+	 **/
+	protected void tellNearby(final String message, final String nearby)
+			throws RemoteException {
+		MudNeighbors index = server.getNeighbors();
+		String[][] rings = index.within(placename, index.radius);
+		final Vector here = new Vector(), near = new Vector();
+		HashSet<RemoteMudPerson> told = new HashSet<RemoteMudPerson>();
+		for (int d=0; d<rings.length; d++) {
+			for (String name : rings[d]) {
+				// A place that hasn't been built has nobody in it
+				MudPlace p = (MudPlace) server.places.get(name);
+				if (p == null) continue;
+				long stamp = p.lock.tryOptimisticRead();
+				if (p.people.isEmpty() && p.lock.validate(stamp)) continue;
+				stamp = p.lock.readLock();
+				try {
+					for (RemoteMudPerson who : p.people.keySet())
+						if (told.add(who)) ((d == 0) ? here : near).add(who);
 				}
+				finally { p.lock.unlockRead(stamp); }
+			}
+		}
+		if (told.isEmpty()) return;
+		getLane().submit(new Runnable() {
+			public void run() {
+				MudBroadcaster b = server.getBroadcaster();
+				if (here.size() > 0) b.deliver(MudPlace.this, here, message);
+				if (near.size() > 0) b.deliver(MudPlace.this, near, nearby);
+			}
+		});
+	}
+	
+	/**
+	 * Take everybody out of this place, and return them with their names.
+	 * MudZones calls this once it has set moved, so that anybody who enters
+	 * after this is sent on to the new place, and everybody who was here is
+	 * sent there by handOver().  This is not a remote method.
+	 **/
+	LinkedHashMap<RemoteMudPerson,String> leave() {
+		long stamp = lock.writeLock();
+		try {
+			LinkedHashMap<RemoteMudPerson,String> here = people;
+			people = new LinkedHashMap<RemoteMudPerson,String>();
+			names = new HashMap<String,RemoteMudPerson>();
+			return here;
+		}
+		finally { lock.unlockWrite(stamp); }
+	}
+	
+	/**
+	 * Send the people leave() took out of this place to the place it has
+	 * moved to, under the same names, without telling anyone.  This calls
+	 * the new server once for each of them, so MudZones calls it after it
+	 * has let go of the world lock.  This is not a remote method.
+	 **/
+	void handOver(LinkedHashMap<RemoteMudPerson,String> here) {
+		for (Map.Entry<RemoteMudPerson,String> e : here.entrySet()) {
+			try {
+				// The new server will have to call a telnet player back
+				if (e.getKey() instanceof MudSession) ((MudSession) e.getKey()).export();
+				moved.enter(e.getKey(), e.getValue(), null);
+			}
+			catch (Exception ex) {
+				System.out.println(" >>>> MudPlace: cannot move " + e.getValue() + " from " +
+				                   placename + " to its new server: " + ex);
 			}
-		}.start();
+		}
+	}
+	
+	/**
+	 * Return this place's lane in the server's broadcaster, creating it the
+	 * first time a message is sent from here.
+	 **/
+	protected synchronized MudBroadcaster.Lane getLane() {
+		if (lane == null) lane = server.getBroadcaster().newLane();
+		return lane;
 	}
 		
 	/**
@@ -383,22 +992,89 @@ public class MudPlace extends UnicastRemoteObject
 	 * NotThere exception.
 	 **/
 	protected String verifyPresence(RemoteMudPerson who) throws MudException.NotThere {
-		int i = people.indexOf(who);
-		if (i == -1) throw new MudException.NotThere();
-		else return (String) names.elementAt(i);
+		String name;
+		long stamp = lock.readLock();
+		try { name = people.get(who); }
+		finally { lock.unlockRead(stamp); }
+		if (name == null) throw new MudException.NotThere();
+		else return name;
 	}
 		
 	/**
-	 * Used for custom de-serialization.  Since the vectors of
-	 * people and of their names are transient, they are not serialized
-	 * with the rest of this place.  Therefore, when the place is 
-	 * de-serialized, those vectors have to be recreated (empty).
+	 * The fields saved with a place.  These are the fields of older versions
+	 * of this class, which kept exits and things in parallel vectors.  The
+	 * hash tables are converted to and from vectors as the place is written
+	 * and read, so that old save files can still be loaded.
+	 **/
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("placename", String.class),
+		new ObjectStreamField("description", String.class),
+		new ObjectStreamField("exits", Vector.class),
+		new ObjectStreamField("destinations", Vector.class),
+		new ObjectStreamField("things", Vector.class),
+		new ObjectStreamField("descriptions", Vector.class),
+		new ObjectStreamField("server", MudServer.class)
+	};
+	
+	/**
+	 * Used for custom serialization.  Write the tables out as vectors.  If
+	 * this thread is writing a MudSnapshot, write the tables as they were
+	 * when it was captured.  Exits to places that haven't been loaded from
+	 * the world file yet are written as the places themselves.
+	 **/
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("placename", placename);
+		fields.put("description", MudText.text(description));
+		LinkedHashMap<String,Object> e;
+		LinkedHashMap<String,MudText> t;
+		MudSnapshot snapshot = MudSnapshot.current();
+		if (snapshot != null && snapshot.exits.containsKey(this)) {
+			e = snapshot.exits.get(this);
+			t = snapshot.things.get(this);
+		}
+		else {
+			long stamp = lock.readLock();
+			try { e = exits; t = things; }
+			finally { lock.unlockRead(stamp); }
+		}
+		Vector d = new Vector(e.size());
+		for (Object o : e.values())
+			d.addElement((o instanceof MudWorldFile.Ref) ? ((MudWorldFile.Ref) o).place() : o);
+		fields.put("exits", new Vector(e.keySet()));
+		fields.put("destinations", d);
+		fields.put("things", new Vector(t.keySet()));
+		fields.put("descriptions", new Vector(MudText.texts(t).values()));
+		fields.put("server", server);
+		out.writeFields();
+	}
+	
+	/**
+	 * Used for custom de-serialization.  The vectors of exits and things
+	 * are read back into tables.  Since the people and their names are
+	 * transient, they are not serialized with the rest of this place.
+	 * Therefore, when the place is de-serialized, those tables have to be
+	 * recreated (empty), along with the lock that guards them.
 	 **/
 	private void readObject(ObjectInputStream in)
 			throws IOException, ClassNotFoundException {
-		in.defaultReadObject();   // Read most of the object as normal
-		names = new Vector();     // Then recreate the names vector
-		people = new Vector();    // and recreate the people vector.
+		ObjectInputStream.GetField fields = in.readFields();
+		placename = (String) fields.get("placename", null);
+		description = MudDescriptions.share((String) fields.get("description", null));
+		server = (MudServer) fields.get("server", null);
+		exits = new LinkedHashMap<String,Object>();
+		Vector e = (Vector) fields.get("exits", null);
+		Vector d = (Vector) fields.get("destinations", null);
+		for (int i=0; e != null && i<e.size(); i++)
+			exits.put((String) e.elementAt(i), d.elementAt(i));
+		things = new LinkedHashMap<String,MudText>();
+		Vector t = (Vector) fields.get("things", null);
+		Vector ds = (Vector) fields.get("descriptions", null);
+		for (int i=0; t != null && i<t.size(); i++)
+			things.put((String) t.elementAt(i), MudDescriptions.share((String) ds.elementAt(i)));
+		people = new LinkedHashMap<RemoteMudPerson,String>();
+		names = new HashMap<String,RemoteMudPerson>();
+		lock = new StampedLock();
 	}
 		
 	/** This constant is a version number for serialization */
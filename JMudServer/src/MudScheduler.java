@@ -0,0 +1,261 @@
+/**
+ * MudScheduler is the clock of a MUD.  A MUD otherwise only does anything
+ * when a client calls it, so this is what makes things happen later: an
+ * exit that closes by itself, or a thing that comes back once it has been
+ * destroyed (see the "close" and "destroy" commands).  One thread keeps time for the whole
+ * server, ticking every jmud.tick milliseconds (default 100), and runs the
+ * timers that are due at each tick, so that thousands of places with
+ * something pending don't need a thread or a Timer each.
+ *
+ * The timers wait in a hierarchical timing wheel: four wheels of 256 slots,
+ * the first a tick per slot, the next 256 ticks per slot, and so on.  A
+ * timer is put in the slot for its tick in the finest wheel that reaches
+ * that far, and each slot is a doubly linked list, so scheduling and
+ * cancelling a timer take the same short time however many are waiting.
+ * Each time the first wheel comes round, the timers in the next slot of the
+ * wheel above are spread out over the wheels below it.  Timers further off
+ * than the wheels reach (about thirteen years of ticks) wait in the last
+ * slot they do reach, and are put back there until their time comes.
+ *
+ * Timers run on the clock's thread, one after another, holding no locks,
+ * so they use a MudPlace through the same methods, and the same locks, as
+ * anything else.  They must be quick and must not block, as the clock
+ * waits for them; the changes MudPlace makes for them don't wait for the
+ * journal.  How late each tick is run is kept in a MudHistogram, and
+ * MudStats reports it.  Timers are not saved: a restarted server has none.
+ *
+ * The main() method checks the wheels, stepping through the ticks itself
+ * rather than waiting for the clock:
+ *   java MudScheduler
+ **/
+public class MudScheduler implements Runnable {
+	static final int BITS = 8;                     // 256 slots in a wheel
+	static final int SLOTS = 1 << BITS;
+	static final int MASK = SLOTS - 1;
+	static final int WHEELS = 4;
+	static final long RANGE = 1L << (BITS * WHEELS);   // Ticks the wheels reach
+
+	final long tick = Long.getLong("jmud.tick", 100);  // Milliseconds a tick
+	final Timer[][] wheels = new Timer[WHEELS][SLOTS];  // Each slot's list head
+	final MudHistogram lag = new MudHistogram();   // How late ticks run, in microseconds
+	final long started = System.nanoTime();        // When tick 0 was
+	long now;              // The last tick run
+	int pending;           // Timers waiting
+	volatile boolean stopped;   // Set to stop the clock
+
+	/** Create the wheels, and start the clock */
+	public MudScheduler() { this(true); }
+
+	/** Create the wheels, and start the clock if asked to */
+	MudScheduler(boolean start) {
+		for (int w=0; w<WHEELS; w++)
+			for (int s=0; s<SLOTS; s++) wheels[w][s] = new Timer(null);
+		if (!start) return;
+		Thread t = new Thread(this, "jmud-scheduler");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Run a task at the first tick at least the specified number of
+	 * milliseconds from now, and after the tick being run, if the clock is
+	 * behind.  Return its timer, which can cancel it.
+	 **/
+	public Timer schedule(long millis, Runnable task) {
+		long tickNanos = tick * 1000000;
+		long at = System.nanoTime() - started + Math.max(0, millis) * 1000000;
+		return at((at + tickNanos - 1) / tickNanos, task);
+	}
+
+	/** Run a task at the specified tick, or the next one if that has gone */
+	synchronized Timer at(long due, Runnable task) {
+		Timer t = new Timer(task);
+		t.due = Math.max(now + 1, due);
+		insert(t);
+		pending++;
+		return t;
+	}
+
+	/** Return how many timers are waiting */
+	public synchronized int getPending() { return pending; }
+
+	/** Stop the clock.  Timers still waiting never run */
+	public void shutdown() { stopped = true; }
+
+	/** Put a timer in the slot for its tick, in the finest wheel that reaches it */
+	private void insert(Timer t) {
+		long ticks = Math.min(t.due - now, RANGE - 1);
+		long at = now + ticks;
+		int w = 0;
+		while (ticks >= (1L << (BITS * (w + 1)))) w++;
+		Timer head = wheels[w][(int) (at >>> (BITS * w)) & MASK];
+		t.next = head;
+		t.prev = head.prev;
+		head.prev.next = t;
+		head.prev = t;
+	}
+
+	/** Take a timer out of its slot */
+	private static void unlink(Timer t) {
+		t.prev.next = t.next;
+		t.next.prev = t.prev;
+		t.prev = t.next = null;
+	}
+
+	/**
+	 * Keep time: wait for each tick, and run it.  A tick that is late, say
+	 * because a timer took too long, is run at once, and so are any others
+	 * that were missed meanwhile.
+	 **/
+	public void run() {
+		long tickNanos = tick * 1000000;
+		while (!stopped) {
+			long due;
+			synchronized(this) { due = started + (now + 1) * tickNanos; }
+			long wait = due - System.nanoTime();
+			if (wait > 0) {
+				try { Thread.sleep(wait / 1000000, (int) (wait % 1000000)); }
+				catch (InterruptedException e) { return; }
+				continue;
+			}
+			lag.record(-wait / 1000);
+			fire();
+		}
+	}
+
+	/** Move on to the next tick, and run the timers due then */
+	private void fire() {
+		for (Timer t = advance(); t != null; t = t.next) {
+			try { t.task.run(); }
+			catch (Throwable e) {
+				System.out.println(" >>>> MudScheduler: timer failed: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Move on to the next tick, spreading out the next slots of the wheels
+	 * above whenever a wheel comes round, and return the timers due now,
+	 * as a list of their own.
+	 **/
+	private synchronized Timer advance() {
+		now++;
+		for (int w=1; w<WHEELS; w++) {
+			if ((now & ((1L << (BITS * w)) - 1)) != 0) break;
+			Timer head = wheels[w][(int) (now >>> (BITS * w)) & MASK];
+			while (head.next != head) {
+				Timer t = head.next;
+				unlink(t);
+				insert(t);
+			}
+		}
+		Timer head = wheels[0][(int) now & MASK];
+		Timer first = null, last = null;
+		while (head.next != head) {
+			Timer t = head.next;
+			unlink(t);
+			if (t.due > now) { insert(t); continue; }   // Beyond the wheels' reach
+			t.fired = true;
+			pending--;
+			if (last == null) first = t;
+			else last.next = t;
+			last = t;
+		}
+		return first;
+	}
+
+	/**
+	 * Check the wheels.  Timers are put at ticks in each wheel and at the
+	 * edges between them, so that they are spread out from the wheels above
+	 * on the way, and some are cancelled, before or after they have been
+	 * spread out.  The ticks are then stepped through, and every timer must
+	 * have run once, at its own tick, except those cancelled, which must
+	 * never run.  Exits with the number of timers that went wrong.
+	 **/
+	public static void main(String[] args) {
+		final MudScheduler s = new MudScheduler(false);
+		long[] due = { 1, 2, 255, 256, 257, 300, 511, 512, 65535, 65536, 65537,
+		               70000, 70000, (1L << 24) - 1, (1L << 24) + 5 };
+		boolean[] cancel = { false, false, false, true, false, false, false, false,
+		                     false, true, false, false, false, false, false };
+		final long[] ran = new long[due.length];
+		Timer[] timers = new Timer[due.length];
+		for (int i=0; i<due.length; i++) {
+			final int n = i;
+			timers[i] = s.at(due[i], new Runnable() {
+				public void run() { ran[n] = (ran[n] == 0) ? s.now : -1; }
+			});
+		}
+		// One is cancelled once it has been spread out into the first wheel
+		Timer late = s.at(600, new Runnable() {
+			public void run() { System.out.println("A cancelled timer ran"); }
+		});
+		// And one schedules another as it runs
+		final long[] again = new long[1];
+		s.at(1000, new Runnable() {
+			public void run() {
+				s.at(0, new Runnable() { public void run() { again[0] = s.now; } });
+			}
+		});
+		int failed = 0;
+		for (int i=0; i<due.length; i++) {
+			if (cancel[i] && !(timers[i].cancel() && !timers[i].cancel())) {
+				System.out.println("Cannot cancel the timer for tick " + due[i]);
+				failed++;
+			}
+		}
+		long last = due[due.length - 1];
+		while (s.now < last) {
+			s.fire();
+			if (s.now == 520 && !late.cancel()) {
+				System.out.println("Cannot cancel a timer that has been spread out");
+				failed++;
+			}
+		}
+		for (int i=0; i<due.length; i++) {
+			long expected = cancel[i] ? 0 : due[i];
+			if (ran[i] != expected) {
+				System.out.println("The timer for tick " + due[i] + (cancel[i] ? ", cancelled," : "") +
+				                   ((ran[i] == 0) ? " never ran" :
+				                    (ran[i] == -1) ? " ran twice" : " ran at tick " + ran[i]));
+				failed++;
+			}
+		}
+		if (again[0] != 1001) {
+			System.out.println("A timer scheduled by a timer ran at tick " + again[0]);
+			failed++;
+		}
+		if (s.getPending() != 0) {
+			System.out.println(s.getPending() + " timers are still waiting");
+			failed++;
+		}
+		System.out.println((failed == 0) ? "The wheels are working" : failed + " failures");
+		System.exit(failed);
+	}
+
+	/** A task waiting in the wheels */
+	public class Timer {
+		final Runnable task;     // What to do
+		long due;                // The tick to do it at
+		Timer prev, next;        // Its neighbors in its slot, or in the due list
+		boolean fired;           // Has it been taken to run?
+
+		Timer(Runnable task) {
+			this.task = task;
+			prev = next = this;  // A slot's head starts out on its own
+		}
+
+		/**
+		 * Stop the task from running, and return true, unless it has already
+		 * run, been taken to run, or been cancelled.
+		 **/
+		public boolean cancel() {
+			synchronized(MudScheduler.this) {
+				if (fired || prev == null) return false;
+				unlink(this);
+				pending--;
+				return true;
+			}
+		}
+	}
+}
@@ -2,7 +2,13 @@ import java.rmi.*;
 import java.rmi.server.*;
 import java.rmi.registry.*;
 import java.io.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.*;
 
 import jmud.*;
@@ -19,6 +25,9 @@ import jmud.*;
  * defines two ways of starting a MUD: one is to start it from scratch with
  * a single initial place, and another is to restore an existing MUD from a 
  * file.
+ * A MUD can also be split into zones served by several servers, each
+ * started with "-shard" (see MudZones), and then a server that is asked
+ * for a place in a zone it doesn't serve passes the request on.
  **/
 public class MudServer extends UnicastRemoteObject
                        implements RemoteMudServer, Serializable {
@@ -27,6 +36,21 @@ public class MudServer extends UnicastRemoteObject
 	String password;     // The password required to dump() the state of the MUD
 	String mudname;      // The name that this MUD is registered under
 	Hashtable places;    // A mapping of place names to places in this MUD
+	transient MudBroadcaster broadcaster;  // Delivers messages for all places
+	transient MudLinks links;    // Finds places on other servers
+	transient MudJournal journal;  // Records changes to the world, if set
+	transient ReentrantReadWriteLock world =  // Shared by changes to the world,
+		new ReentrantReadWriteLock();         // held alone by snapshots
+	transient MudSnapshot lastSnapshot;  // The last snapshot written, if any
+	transient MudWorldFile mapped;  // The world file places are loaded from
+	transient HashMap<InboxPerson,MudInbox> inboxes;  // People who logged in
+	transient volatile MudStats stats;  // Counts and times the remote methods
+	transient MudZones zones;    // The zones this server serves, if the MUD is split
+	transient Set<String> departed =  // Places that have moved to other servers
+		Collections.synchronizedSet(new HashSet<String>());
+	transient volatile MudNeighbors neighbors;  // Which places lead to which
+	transient volatile MudIndex index;  // The words in every place and thing
+	transient volatile MudScheduler scheduler;  // Runs what is to happen later
 	
 	/**
 	 * Start a MUD from scratch, with the given name and password.  Create
@@ -49,10 +73,14 @@ public class MudServer extends UnicastRemoteObject
   public MudServer() throws RemoteException {}
   
  	/** This remote method returns the name of the MUD */
- 	public String getMudName() throws RemoteException { return mudname; }
+ 	public String getMudName() throws RemoteException {
+ 		getStats().count(MudStats.Op.GET_MUD_NAME);
+ 		return mudname;
+ 	}
  	
  	/** This remote method returns the entrance place of the MUD */
  	public RemoteMudPlace getEntrance() throws RemoteException {
+ 		getStats().count(MudStats.Op.GET_ENTRANCE);
  		return entrance;
  	}
  	
@@ -61,15 +89,86 @@ public class MudServer extends UnicastRemoteObject
  	 * In this sense, A MudServer acts as an RMI Registry object, returning
  	 * remote objects looked up by name.  It is simpler to do it this wat than
  	 * to use an actual Registry object.  If the named place doesn't exist,
- 	 * it throws a NoSuchPlace exception.
+ 	 * it throws a NoSuchPlace exception.  If the MUD is split into zones, and
+ 	 * the place is in a zone served by another server, that server is asked
+ 	 * for it.
  	 **/
  	public RemoteMudPlace getNamedPlace(String name)
  			throws RemoteException, MudException.NoSuchPlace {
- 		RemoteMudPlace p = (RemoteMudPlace) places.get(name);
- 		if (p == null) throw new MudException.NoSuchPlace();
+ 		return getStats().time(MudStats.Op.GET_NAMED_PLACE, new MudStats.Call<RemoteMudPlace>() {
+ 			public RemoteMudPlace call() throws RemoteException, MudException.NoSuchPlace {
+ 				RemoteMudPlace p = getPlace(name);
+ 				if (p == null && zones != null) p = zones.route(name);
+ 				if (p == null) throw new MudException.NoSuchPlace();
+ 				return p;
+ 			}
+ 		});
+ 	}
+ 	
+ 	/**
+ 	 * Return the named place, or null if there is no such place.  If the MUD
+ 	 * was opened from a world file, and the place hasn't been loaded from it
+ 	 * yet, it is loaded now.  A place that has moved to another server is no
+ 	 * longer here, even if it is still in the world file.  This is not a
+ 	 * remote method.
+ 	 **/
+ 	MudPlace getPlace(String name) throws RemoteException {
+ 		MudPlace p = (MudPlace) places.get(name);
+ 		if (p == null && mapped != null && !departed.contains(name)) {
+ 			int i = mapped.find(name);
+ 			if (i >= 0) p = mapped.place(i);
+ 		}
  		return p;
  	}
  	
+ 	/**
+ 	 * Load every place that is still waiting in the world file the MUD was
+ 	 * opened from, if any.  This is not a remote method.
+ 	 **/
+ 	void loadAll() throws RemoteException {
+ 		if (mapped != null) mapped.loadAll();
+ 	}
+ 	
+ 	/**
+ 	 * This remote method logs a person in without a callback object, and
+ 	 * returns the inbox that will hold their messages.
+ 	 **/
+ 	public RemoteMudInbox login(String description) throws RemoteException {
+ 		return getStats().time(MudStats.Op.LOGIN, new MudStats.Call<RemoteMudInbox>() {
+ 			public RemoteMudInbox call() throws RemoteException {
+ 				MudInbox inbox = new MudInbox(MudServer.this, description);
+ 				synchronized(MudServer.this) {
+ 					if (inboxes == null) inboxes = new HashMap<InboxPerson,MudInbox>();
+ 					inboxes.put(inbox.person, inbox);
+ 				}
+ 				return inbox;
+ 			}
+ 		});
+ 	}
+ 	
+ 	/**
+ 	 * If the person logged in to this server, have them delivered to directly
+ 	 * rather than through their inbox's stub.  MudPlace calls this when the
+ 	 * person enters.  This is not a remote method.
+ 	 **/
+ 	synchronized void attach(InboxPerson person) {
+ 		MudInbox inbox = inboxOf(person);
+ 		if (inbox != null) person.attach(inbox);
+ 	}
+ 	
+ 	/**
+ 	 * Return the inbox of a person who logged in to this server, or null if
+ 	 * they logged in somewhere else.  This is not a remote method.
+ 	 **/
+ 	synchronized MudInbox inboxOf(InboxPerson person) {
+ 		return (inboxes == null) ? null : inboxes.get(person);
+ 	}
+ 	
+ 	/** Forget a person whose inbox has been closed.  Not a remote method. */
+ 	synchronized void forget(InboxPerson person) {
+ 		if (inboxes != null) inboxes.remove(person);
+ 	}
+ 	
  	/**
  	 * Define a new placename to place mapping in out hashtable.
  	 * This is not a remote method.  The MudPlace() constructor calls it
@@ -77,61 +176,391 @@ public class MudServer extends UnicastRemoteObject
  	 **/
  	public void setPlaceName(RemoteMudPlace place, String name)
  			throws MudException.PlaceAlreadyExists {
- 		if (places.containsKey(name)) throw new MudException.PlaceAlreadyExists();
+ 		if (places.containsKey(name) ||
+ 		    (mapped != null && !departed.contains(name) && mapped.find(name) >= 0))
+ 			throw new MudException.PlaceAlreadyExists();
  		places.put(name, place);
  	}
- 	
+
+ 	/**
+ 	 * Create a place that has moved here from another server, with no exits
+ 	 * or things yet, and journal it.  The caller holds the world lock.  This
+ 	 * is not a remote method.
+ 	 **/
+ 	MudPlace adopt(String name, String description)
+ 			throws RemoteException, MudException.PlaceAlreadyExists {
+ 		byte[] r = encode(MudJournal.ADOPT, name, description);
+ 		MudPlace place = new MudPlace(this, name, description,
+ 		                              new LinkedHashMap<String,Object>(),
+ 		                              new LinkedHashMap<String,MudText>());
+ 		setPlaceName(place, name);
+ 		place.exitsChanged();    // In case its name was known to lead nowhere
+ 		MudIndex i = index;
+ 		if (i != null) i.addPlace(name, description);
+ 		record(r);
+ 		return place;
+ 	}
+
+ 	/**
+ 	 * Forget a place that has moved to another server, and journal it.  Return
+ 	 * the journal's sequence number for the record.  This is not a remote
+ 	 * method.
+ 	 **/
+ 	long depart(String name) throws RemoteException {
+ 		byte[] r = encode(MudJournal.DEPART, name);
+ 		world.readLock().lock();
+ 		try {
+ 			getPlace(name);   // Make sure it isn't left waiting in the world file
+ 			places.remove(name);
+ 			departed.add(name);
+ 			MudNeighbors n = neighbors;
+ 			if (n != null) n.removed(name);
+ 			MudIndex i = index;
+ 			if (i != null) i.removePlace(name);
+ 			return record(r);
+ 		}
+ 		finally { world.readLock().unlock(); }
+ 	}
+
+ 	/**
+ 	 * Return the broadcaster that delivers messages for every place in this
+ 	 * MUD, creating it the first time it is needed.  It is transient, so a
+ 	 * restored MUD gets a new one.  This is not a remote method.
+ 	 **/
+ 	public synchronized MudBroadcaster getBroadcaster() {
+ 		if (broadcaster == null) broadcaster = new MudBroadcaster();
+ 		return broadcaster;
+ 	}
+
+ 	/**
+ 	 * Return the counts and timings of this MUD's remote methods, creating
+ 	 * them the first time they are needed.  Every remote method calls this,
+ 	 * so it only locks the first time.  This is not a remote method.
+ 	 **/
+ 	MudStats getStats() {
+ 		MudStats s = stats;
+ 		if (s == null) {
+ 			synchronized(this) {
+ 				if (stats == null) stats = new MudStats(this);
+ 				s = stats;
+ 			}
+ 		}
+ 		return s;
+ 	}
+
+ 	/**
+ 	 * Return the index of which places lead to which, used by shouts,
+ 	 * creating it the first time it is needed.  This is not a remote method.
+ 	 **/
+ 	synchronized MudNeighbors getNeighbors() {
+ 		if (neighbors == null) neighbors = new MudNeighbors(this);
+ 		return neighbors;
+ 	}
+
+ 	/**
+ 	 * Return the full-text index of the places and things in this MUD,
+ 	 * building it the first time it is needed.  This is not a remote method.
+ 	 **/
+ 	MudIndex getIndex() {
+ 		MudIndex i = index;
+ 		return (i != null) ? i : MudIndex.build(this);
+ 	}
+
+ 	/**
+ 	 * Return the clock that runs timers for this MUD, starting it the first
+ 	 * time it is needed.  This is not a remote method.
+ 	 **/
+ 	synchronized MudScheduler getScheduler() {
+ 		if (scheduler == null) scheduler = new MudScheduler();
+ 		return scheduler;
+ 	}
+
+ 	/**
+ 	 * Return the cache of connections to other MUD servers, used by exits
+ 	 * that lead to them.  This is not a remote method.
+ 	 **/
+ 	public synchronized MudLinks getLinks() {
+ 		if (links == null) links = new MudLinks();
+ 		return links;
+ 	}
+
+ 	/**
+ 	 * Encode the journal record of a change to the world, or return null if
+ 	 * there is no journal.  MudPlace calls this before it makes the change,
+ 	 * so that a change too long to journal (which throws an
+ 	 * IllegalArgumentException) is never made.  This is not a remote method.
+ 	 **/
+ 	byte[] encode(byte type, String... args) {
+ 		return (journal == null) ? null : MudJournal.encode(type, args);
+ 	}
+
+ 	/**
+ 	 * Record a change to the world in the journal, if there is one, and
+ 	 * return the sequence number to wait for.  MudPlace calls this with the
+ 	 * record encode() gave it, while it holds the locks for the change.  This
+ 	 * is not a remote method.
+ 	 **/
+ 	long record(byte[] record) {
+ 		MudJournal j = journal;
+ 		return (j == null || record == null) ? 0 : j.append(record);
+ 	}
+
+ 	/**
+ 	 * Wait until the journal record with the specified sequence number is
+ 	 * on disk.  This is not a remote method.
+ 	 **/
+ 	void awaitDurable(long seq) throws RemoteException {
+ 		MudJournal j = journal;
+ 		if (seq == 0 || j == null) return;
+ 		try { j.await(seq); }
+ 		catch (IOException e) { throw new RemoteException("MUD journal failed", e); }
+ 	}
+
  	/**
  	 * This remote method serializes and compresses the state of the MUD
  	 * to a named file, if the specified password matches the one specified
  	 * when the MUD was initially created.  Note that the state of a MUD
  	 * consists of all places in the MUD, with all things and exits in those
  	 * places.  The people in the MUD are not part of the state that is saved.
+ 	 * The state is captured as a MudSnapshot and written in the background,
+ 	 * so this returns at once, and the MUD is not held up while the file is
+ 	 * written.  The server's console reports when the write is done.
+ 	 * If the file name ends in ".world", the MUD is written as a MudWorldFile,
+ 	 * which can be opened much faster than a save file.
  	 **/
  	public void dump(String password, String f)
  			throws RemoteException, MudException.BadPassword, IOException {
- 		if ((this.password != null) && !this.password.equals(password))
- 			throw new MudException.BadPassword();
- 		ObjectOutputStream out = 
- 			new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(f)));
+ 		getStats().time(MudStats.Op.DUMP, new MudStats.Call<Void>() {
+ 			public Void call() throws RemoteException, MudException.BadPassword, IOException {
+ 				if ((MudServer.this.password != null) && !MudServer.this.password.equals(password))
+ 					throw new MudException.BadPassword();
+ 				File file = new File(f);
+ 				if (!MudSnapshot.isCompact(file)) loadAll();  // A save file needs every place
+ 				MudSnapshot.capture(MudServer.this).writeInBackground(file, null);
+ 				return null;
+ 			}
+ 		});
+ 	}
+
+ 	/**
+ 	 * This remote method moves a zone of a MUD that is split across servers
+ 	 * to another server, if the password is right.  See MudZones.
+ 	 **/
+ 	public void moveZone(String password, String zone, String url)
+ 			throws RemoteException, MudException.BadPassword, MudException.NoSuchPlace {
+ 		getStats().time(MudStats.Op.MOVE_ZONE, new MudStats.Call<Void>() {
+ 			public Void call() throws RemoteException, MudException.BadPassword, MudException.NoSuchPlace {
+ 				if ((MudServer.this.password != null) && !MudServer.this.password.equals(password))
+ 					throw new MudException.BadPassword();
+ 				if (zones == null) throw new MudException.NoSuchPlace();
+ 				zones.move(zone, url, password);
+ 				return null;
+ 			}
+ 		});
+ 	}
+
+ 	/**
+ 	 * This remote method returns the places and things whose names or
+ 	 * descriptions have all the words in the query, best first, but no more
+ 	 * than jmud.find.max of them (default 20).
+ 	 **/
+ 	public MudMatch[] find(String query) throws RemoteException {
+ 		return getStats().time(MudStats.Op.FIND, new MudStats.Call<MudMatch[]>() {
+ 			public MudMatch[] call() throws RemoteException {
+ 				return getIndex().find(query, Integer.getInteger("jmud.find.max", 20));
+ 			}
+ 		});
+ 	}
+
+ 	/**
+ 	 * This remote method returns the questions that the commands of
+ 	 * MudCommands ask, for a client to ask before it sends a command.
+ 	 **/
+ 	public Hashtable getPrompts() throws RemoteException {
+ 		getStats().count(MudStats.Op.GET_PROMPTS);
+ 		return MudCommands.prompts();
+ 	}
+
+ 	/**
+ 	 * This remote method takes over a zone that another server is moving
+ 	 * here, if the password is right, and returns its new places by name.
+ 	 **/
+ 	public Hashtable acceptZone(String password, MudZone zone)
+ 			throws RemoteException, MudException.BadPassword, MudException.PlaceAlreadyExists {
+ 		return getStats().time(MudStats.Op.ACCEPT_ZONE, new MudStats.Call<Hashtable>() {
+ 			public Hashtable call() throws RemoteException, MudException.BadPassword, MudException.PlaceAlreadyExists {
+ 				if ((MudServer.this.password != null) && !MudServer.this.password.equals(password))
+ 					throw new MudException.BadPassword();
+ 				if (zones == null) throw new RemoteException(mudname + " is not split into zones");
+ 				return zones.accept(zone);
+ 			}
+ 		});
+ 	}
+
+ 	/** Serialize and compress the state of the MUD to a stream */
+ 	void save(OutputStream f) throws IOException {
+ 		GZIPOutputStream z = new GZIPOutputStream(f);
+ 		ObjectOutputStream out = new ObjectOutputStream(z);
  		out.writeObject(this);
- 		out.close();
+ 		out.flush();
+ 		z.finish();
+ 	}
+
+ 	/**
+ 	 * Read a MUD back in from a file written by dump().  A world file is
+ 	 * opened rather than read, and its places are loaded as they are needed.
+ 	 **/
+ 	static MudServer load(File f) throws IOException, ClassNotFoundException {
+ 		if (MudWorldFile.isWorldFile(f)) return MudWorldFile.open(f);
+ 		ObjectInputStream in =
+ 			new ObjectInputStream(new GZIPInputStream(new FileInputStream(f)));
+ 		try { return (MudServer) in.readObject(); }
+ 		finally { in.close(); }
+ 	}
+
+ 	/**
+ 	 * Used for custom serialization.  If this thread is writing a
+ 	 * MudSnapshot, write the table of places as it was when it was captured.
+ 	 **/
+ 	private void writeObject(ObjectOutputStream out) throws IOException {
+ 		MudSnapshot snapshot = MudSnapshot.current();
+ 		ObjectOutputStream.PutField fields = out.putFields();
+ 		fields.put("entrance", entrance);
+ 		fields.put("password", password);
+ 		fields.put("mudname", mudname);
+ 		fields.put("places", (snapshot != null) ? snapshot.places : places);
+ 		out.writeFields();
+ 	}
+
+ 	/**
+ 	 * Used for custom de-serialization.  The world lock and the set of
+ 	 * departed places are transient, so they have to be recreated.
+ 	 **/
+ 	private void readObject(ObjectInputStream in)
+ 			throws IOException, ClassNotFoundException {
+ 		in.defaultReadObject();
+ 		world = new ReentrantReadWriteLock();
+ 		departed = Collections.synchronizedSet(new HashSet<String>());
  	}
  	
  	/**
  	 * This main() method defines the standalone program that starts up a MUD
  	 * server.  If invoked with a single argument, it treats that argument as
  	 * the name of a file containing the serialized and compressed state of an
- 	 * existing MUD, and recreates it.  Otherwise, it expects four command-line
- 	 * arguments: the name of the MUD, the password, the name of the entrance
- 	 * place for the MUD, and a description of that entrance place.
+ 	 * existing MUD, and recreates it.  The file may also be a world file
+ 	 * written by dumping to a name ending in ".world", which is opened at once
+ 	 * and its places loaded as they are needed.  Otherwise, it expects four
+ 	 * command-line arguments: the name of the MUD, the password, the name of
+ 	 * the entrance place for the MUD, and a description of that entrance place.
  	 * Besides creating the MudServer object, this program sets an appropriate
  	 * security manager, and uses the default rmiregistry to register the
  	 * MudServer under its given name.
+ 	 * The arguments may be preceded by "-journal <directory>" to keep a
+ 	 * journal of every change in that directory.  If the directory already
+ 	 * holds a journal, the MUD is recovered from it, and the other arguments
+ 	 * are not needed.
+ 	 * They may also be preceded by "-snapshot <file> <seconds>" to write a
+ 	 * snapshot of the MUD to the file that often, in the background, and by
+ 	 * "-telnet <port>" to let players in with a telnet client (see MudTelnet)
+ 	 * as well as with MudClient.  "-sessions <port>" does the same with a
+ 	 * thread for each player (see MudSessionListener).
+ 	 * The server's statistics (see MudStats) are published over JMX, and
+ 	 * "-stats <file> <seconds>" also appends them to the file that often.
+ 	 * "-shard <directory url> <url>" makes the server one of several serving
+ 	 * a MUD split into zones: it registers itself under the url as well, and
+ 	 * tells the MudDirectory registered under the directory url that it
+ 	 * serves the zones of its places, unless another server already does.
  	 **/
  	public static void main(String[] args) {
  		try {
+ 			MudJournal journal = null;
+ 			File snapshotFile = null;
+ 			long snapshotEvery = 0;
+ 			int telnetPort = -1;
+ 			int sessionPort = -1;
+ 			File statsFile = null;
+ 			long statsEvery = 0;
+ 			String directoryUrl = null, shardUrl = null;
+ 			int a = 0;
+ 			for (;;) {
+ 				if (args.length > a+1 && args[a].equals("-journal")) {
+ 					journal = new MudJournal(new File(args[a+1]));
+ 					a += 2;
+ 				}
+ 				else if (args.length > a+2 && args[a].equals("-snapshot")) {
+ 					snapshotFile = new File(args[a+1]);
+ 					snapshotEvery = Long.parseLong(args[a+2]);
+ 					a += 3;
+ 				}
+ 				else if (args.length > a+1 && args[a].equals("-telnet")) {
+ 					telnetPort = Integer.parseInt(args[a+1]);
+ 					a += 2;
+ 				}
+ 				else if (args.length > a+1 && args[a].equals("-sessions")) {
+ 					sessionPort = Integer.parseInt(args[a+1]);
+ 					a += 2;
+ 				}
+ 				else if (args.length > a+2 && args[a].equals("-stats")) {
+ 					statsFile = new File(args[a+1]);
+ 					statsEvery = Long.parseLong(args[a+2]);
+ 					a += 3;
+ 				}
+ 				else if (args.length > a+2 && args[a].equals("-shard")) {
+ 					directoryUrl = args[a+1];
+ 					shardUrl = args[a+2];
+ 					a += 3;
+ 				}
+ 				else break;
+ 			}
+ 			
  			MudServer server;
- 			if (args.length == 1) {
+ 			if (journal != null && journal.hasSnapshot()) {
+ 				// Recover the MUD from its journal
+ 				System.out.println(" Journal found -- Recovering saved information.");
+ 				server = journal.loadSnapshot();
+ 			}
+ 			else if (args.length - a == 1) {
  				// Read the MUD state in from a file
  				System.out.println(" File provided -- Reading saved information.");
- 				FileInputStream f = new FileInputStream(args[0]);
- 				ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(f));
- 				server = (MudServer) in.readObject();
+ 				server = load(new File(args[a]));
  			}
  			// Otherwise, create an initial MUD from scratch
- 			else server = new MudServer(args[0], args[1], args[2], args[3]);
+ 			else server = new MudServer(args[a], args[a+1], args[a+2], args[a+3]);
+ 			// Replay the changes made since the snapshot, and journal new ones
+ 			if (journal != null) journal.open(server);
+ 			// Take snapshots automatically, if asked to
+ 			if (snapshotFile != null)
+ 				MudSnapshot.every(server, snapshotFile, snapshotEvery);
+ 			// Publish the statistics over JMX, and write them out if asked to
+ 			server.getStats().register();
+ 			if (statsFile != null) server.getStats().every(statsFile, statsEvery);
  			
  			System.setSecurityManager(new RMISecurityManager());
  			// Naming.rebind(Mud.mudPrefix + server.mudname, server);
  			Naming.rebind("rmi://localhost/"+MudException.mudPrefix, server);
+ 			// Join the other servers of a MUD split into zones, if asked to
+ 			if (shardUrl != null) {
+ 				Naming.rebind(shardUrl, server);
+ 				server.zones = new MudZones(server,
+ 					(RemoteMudDirectory) Naming.lookup(directoryUrl), shardUrl);
+ 				server.zones.claimAll();
+ 			}
+ 			// Open the telnet front door, if asked to
+ 			if (telnetPort >= 0) new MudTelnet(server, telnetPort).start();
+ 			if (sessionPort >= 0) new MudSessionListener(server, sessionPort).start();
  		}
  		// Display an error message if anything goes wrong
  		catch (Exception e) {
  			System.out.println(e);
- 			System.out.println("Usage: java MudServer <savefile>\n" +
- 							   "   or: java MudServer <mudname> <password> " +
- 							   "<placename> <description>");
+ 			System.out.println("Usage: java MudServer [-journal <dir>] " +
+ 							   "[-snapshot <file> <seconds>] [-telnet <port>] " +
+ 							   "[-sessions <port>] [-stats <file> <seconds>] " +
+ 							   "[-shard <directory url> <url>] <savefile>\n" +
+ 							   "   or: java MudServer [-journal <dir>] " +
+ 							   "[-snapshot <file> <seconds>] [-telnet <port>] " +
+ 							   "[-sessions <port>] [-stats <file> <seconds>] " +
+ 							   "[-shard <directory url> <url>] " +
+ 							   "<mudname> <password> <placename> <description>");
  			System.exit(1);
  		}
  		System.out.println(" ** Server start -- You can start a client now **\n");
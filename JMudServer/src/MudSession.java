@@ -0,0 +1,286 @@
+import java.rmi.*;
+import java.rmi.server.*;
+import java.util.*;
+import jmud.*;
+
+/**
+ * A MudSession is a person in the MUD who is played over a plain text
+ * connection, rather than from a MudClient.  It understands the same
+ * commands as MudClient.runMud(), one per line, and carries them out on
+ * the places of this server directly.  It is also the person those places
+ * see: messages sent to the person are written straight to the connection,
+ * so a session needs no RMI callback and no connection back to the player.
+ *
+ * The commands themselves are interpreted by MudCommands, through the
+ * execute() method of the place the player is in, as they are for
+ * MudClient.
+ *
+ * A session doesn't know how its text travels.  Subclasses provide write(),
+ * which queues text for the player, and disconnect(), and feed each line
+ * the player types to handle().  Commands that need more than one line,
+ * such as "create", ask their questions one at a time, and handle() gives
+ * the answers to the command when the last one is in.
+ *
+ * A session is only exported as a remote object if the player goes
+ * through an exit to another server, which has to be able to call it.
+ **/
+public abstract class MudSession implements RemoteMudPerson {
+	final MudServer server;       // The server the player connected to
+	String name;                  // The player's name
+	String description;           // What people see when they look at them
+	RemoteMudPlace location;      // Where they are
+	String mudname, placename;    // The names of where they are, for the prompt
+	String[] questions;           // Questions still being asked, if any
+	String[] answers;             // The answers so far
+	int answered;                 // How many have been answered
+	Answer then;                  // What to do with the answers
+	boolean exported;             // Has this been exported for another server?
+	volatile boolean closed;      // Has the player left?
+
+	/** What a command does once its questions have been answered */
+	interface Answer {
+		void run(String[] answers) throws Exception;
+	}
+
+	public MudSession(MudServer server) {
+		this.server = server;
+	}
+
+	/**
+	 * Queue text to be sent to the player, as UTF-8.  Return false if it
+	 * can't be sent, because the connection is closed or too far behind.
+	 * The array may be shared, and must not be changed.
+	 **/
+	abstract boolean write(byte[] bytes);
+
+	/** Queue text to be sent to the player, and return false if it can't be */
+	boolean write(String text) { return write(text.getBytes(MudTelnet.UTF8)); }
+
+	/**
+	 * Queue broadcast messages to be sent to the player, a line each, and
+	 * return false if they can't be.  Each message is encoded once, for
+	 * everybody it is sent to.
+	 **/
+	boolean write(MudMessage[] messages) {
+		for (int i=0; i<messages.length; i++)
+			if (!write(messages[i].line())) return false;
+		return true;
+	}
+
+	/** Close the connection once everything queued has been sent */
+	abstract void disconnect();
+
+	/** Greet the player, and ask who they are */
+	void start() {
+		write("Welcome to " + server.mudname + "\r\n");
+		ask(new Answer() {
+			public void run(String[] a) throws Exception {
+				name = a[0];
+				description = a[1];
+				location = server.getEntrance();
+				location.enter(MudSession.this, name, name + " has entered the MUD.");
+				show(location.look());
+			}
+		}, "Enter your name: ", "Please describe what people see when they look at you: ");
+		write(questions[0]);
+	}
+
+	/**
+	 * Handle a line typed by the player: the answer to a question if one has
+	 * been asked, and otherwise a command.  Lines are handled one at a time,
+	 * in the order they were typed.
+	 **/
+	void handle(String line) {
+		if (closed) return;
+		line = line.trim();
+		if (line.length() > 0) {
+			if (then != null) {
+				answers[answered++] = line;
+				if (answered == questions.length) {
+					Answer a = then;
+					then = null;
+					perform(a, answers);
+				}
+			}
+			else {
+				final String command = line;
+				perform(new Answer() {
+					public void run(String[] unused) throws Exception { command(command); }
+				}, null);
+			}
+		}
+		if (closed) return;
+		if (then != null) write(questions[answered]);
+		else if (location != null) write(mudname + '.' + placename + "> ");
+	}
+
+	/**
+	 * Ask the player some questions, one at a time, and pass the answers to
+	 * the specified action once they have all been given.
+	 **/
+	void ask(Answer action, String... q) {
+		questions = q;
+		answers = new String[q.length];
+		answered = 0;
+		then = action;
+	}
+
+	/**
+	 * Carry out a command, reporting anything that goes wrong to the player
+	 * the same way MudClient does.
+	 **/
+	void perform(Answer action, String[] a) {
+		try { action.run(a); }
+		catch (MudException.MudExceptionBase e) {
+			if (e instanceof MudException.NoSuchThing)
+				write("There isn't any such thing here.\r\n");
+			else if (e instanceof MudException.NoSuchPerson)
+				write("There isn't anyone by that name here.\r\n");
+			else if (e instanceof MudException.NoSuchExit)
+				write("There isn't an exit in that direction.\r\n");
+			else if (e instanceof MudException.NoSuchPlace)
+				write("There isn't any such place.\r\n");
+			else if (e instanceof MudException.ExitAlreadyExists)
+				write("There is already an exit in that direction.\r\n");
+			else if (e instanceof MudException.PlaceAlreadyExists)
+				write("There is already a place with that name.\r\n");
+			else if (e instanceof MudException.LinkFailed)
+				write("That exit is not functioning.\r\n");
+			else if (e instanceof MudException.BadPassword)
+				write("Invalid Password.\r\n");
+			else if (e instanceof MudException.NotThere)
+				write("You can't do that when you're not there.\r\n");
+			else if (e instanceof MudException.AlreadyThere)
+				write("You can't go there; you're already there.\r\n");
+		}
+		catch (RemoteException e) {
+			write("The MUD is having technical difficulties.\r\n" + e + "\r\n");
+		}
+		catch (Exception e) {
+			write("Syntax or other error:\r\n" + e + "\r\nTry using the 'help' command.\r\n");
+		}
+	}
+
+	/**
+	 * Carry out one command.  The server the player is in interprets it
+	 * (see MudCommands), in a single call.
+	 **/
+	void command(final String line) throws Exception {
+		// A server the exit leads to will need to call us back
+		if (line.toLowerCase().startsWith("go ")) {
+			if (!(location instanceof MudPlace) ||
+			    ((MudPlace) location).leadsAway(line.substring(3).trim()))
+				export();
+		}
+		// Ask the command's questions first, so that it still takes one call
+		String[] q = MudCommands.questions(line);
+		if (q != null) {
+			ask(new Answer() {
+				public void run(String[] a) throws Exception { execute(line, a); }
+			}, q);
+			return;
+		}
+		execute(line, null);
+	}
+
+	/**
+	 * Have the server carry out a command, with the answers to its questions
+	 * if it has any, and show the player the result.  If the questions
+	 * haven't been answered yet, ask them, and carry out the command again
+	 * when they have.
+	 **/
+	void execute(final String line, String[] answers) throws Exception {
+		MudResult r = location.execute(this, line, answers);
+		if (r.getQuestions() != null) {
+			ask(new Answer() {
+				public void run(String[] a) throws Exception { execute(line, a); }
+			}, r.getQuestions());
+			return;
+		}
+		if (r.getText() != null) write(r.getText().replace("\n", "\r\n") + "\r\n");
+		if (r.getView() != null) show(r.getView());
+		if (r.getDescription() != null) description = r.getDescription();
+		if (r.isQuit()) {
+			leave();
+			disconnect();
+		}
+	}
+
+	/** Describe a place to the player, and remember where they are */
+	void show(PlaceView view) {
+		location = view.getPlace();
+		mudname = view.getMudName();
+		placename = view.getPlaceName();
+		StringBuilder b = new StringBuilder();
+		b.append("You are in: ").append(placename)
+		 .append(" of the Mud: ").append(mudname).append("\r\n")
+		 .append(view.getDescription()).append("\r\n");
+		list(b, "Things here: ", view.getThings());
+		list(b, "People here: ", view.getNames());
+		list(b, "Exits here: ", view.getExits());
+		write(b.toString());
+	}
+
+	private static void list(StringBuilder b, String title, List<String> items) {
+		b.append(title);
+		for (int i=0; i<items.size(); i++) {
+			if (i > 0) b.append(", ");
+			b.append(items.get(i));
+		}
+		b.append("\r\n");
+	}
+
+	/** Export this session, so that another server can call it */
+	synchronized void export() throws RemoteException {
+		if (exported) return;
+		UnicastRemoteObject.exportObject(this, 0);
+		exported = true;
+	}
+
+	/**
+	 * Take the player out of the MUD.  This is called when they quit, and
+	 * when their connection is lost.
+	 **/
+	void leave() {
+		if (closed) return;
+		closed = true;
+		if (location != null) {
+			try { location.exit(this, name + " has left."); }
+			catch (Exception e) {}
+		}
+		synchronized(this) {
+			if (exported) {
+				try { UnicastRemoteObject.unexportObject(this, true); }
+				catch (NoSuchObjectException e) {}
+				exported = false;
+			}
+		}
+	}
+
+	/** Return the player's description */
+	public String getDescription() throws RemoteException { return description; }
+
+	/** Deliver a message to the player */
+	public void tell(String message) throws RemoteException {
+		if (!write(message + "\r\n"))
+			throw new RemoteException("session for " + name + " can't keep up");
+	}
+
+	/** Deliver several messages to the player at once, in order */
+	public void tellBatch(String[] messages) throws RemoteException {
+		StringBuilder b = new StringBuilder();
+		for (int i=0; i<messages.length; i++) b.append(messages[i]).append("\r\n");
+		if (!write(b.toString()))
+			throw new RemoteException("session for " + name + " can't keep up");
+	}
+
+	/**
+	 * Deliver broadcast messages to the player, in order.  MudOutbox calls
+	 * this rather than tellBatch() for a session on this server.  This is
+	 * not a remote method.
+	 **/
+	void tell(MudMessage[] messages) throws RemoteException {
+		if (!write(messages))
+			throw new RemoteException("session for " + name + " can't keep up");
+	}
+}
@@ -0,0 +1,166 @@
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A MudSessionListener lets players in with a telnet client, like
+ * MudTelnet, but gives every session a thread of its own.  The thread runs
+ * the session's command loop in the plainest possible way: it blocks
+ * reading a line, carries out the command, and goes back to reading.
+ * Messages to the player are written straight to the socket by whoever
+ * sends them.  A player who stops reading holds up a broadcaster courier
+ * until the broadcaster gives up on them, and then it closes the socket,
+ * which ends the write and the session.
+ *
+ * On a Java runtime with virtual threads, each session gets a virtual
+ * thread, which costs a few hundred bytes while it waits for the player to
+ * type, so tens of thousands of idle players fit in one server.  Setting
+ * jmud.session.threads to "platform" gives each session an ordinary thread
+ * instead, with a stack of jmud.session.stack bytes (default 256k), for
+ * comparison; older runtimes always use ordinary threads.
+ *
+ * Output is written under a ReentrantLock rather than a monitor, so that a
+ * virtual thread blocked on a slow socket doesn't hold on to the carrier
+ * thread beneath it.
+ **/
+public class MudSessionListener implements Runnable {
+	final MudServer server;              // The MUD this lets players into
+	final ServerSocket listener;         // Accepts new connections
+	final ExecutorService sessions;      // Runs each session on its own thread
+	final boolean virtual;               // Are those virtual threads?
+
+	/** Listen for players on the specified port */
+	public MudSessionListener(MudServer server, int port) throws IOException {
+		this.server = server;
+		listener = new ServerSocket();
+		listener.setReuseAddress(true);
+		listener.bind(new InetSocketAddress(port), 1024);
+		ExecutorService v = null;
+		if (!"platform".equals(System.getProperty("jmud.session.threads")))
+			v = virtualThreads();
+		virtual = (v != null);
+		if (v != null) sessions = v;
+		else {
+			final long stack = Long.getLong("jmud.session.stack", 256 * 1024);
+			sessions = Executors.newCachedThreadPool(new ThreadFactory() {
+				int count;
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(null, r, "jmud-session-" + (++count), stack);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Return an executor that starts a virtual thread for every task, or
+	 * null if this runtime doesn't have them.  It is looked up by name so
+	 * that the server still runs on runtimes from before virtual threads.
+	 **/
+	static ExecutorService virtualThreads() {
+		try {
+			return (ExecutorService)
+				Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (Exception e) { return null; }
+	}
+
+	/** Start the thread that accepts connections */
+	public void start() {
+		Thread t = new Thread(this, "jmud-session-listener");
+		t.setDaemon(true);
+		t.start();
+		System.out.println(" >>>> MudSessionListener: listening on port " +
+		                   listener.getLocalPort() + " with " +
+		                   (virtual ? "virtual" : "platform") + " threads");
+	}
+
+	/** Accept connections, and start a session thread for each one */
+	public void run() {
+		for (;;) {
+			try {
+				Socket s = listener.accept();
+				s.setTcpNoDelay(true);
+				sessions.execute(new Session(s));
+			}
+			catch (IOException e) {
+				if (listener.isClosed()) return;
+				System.out.println(" >>>> MudSessionListener: " + e);
+			}
+		}
+	}
+
+	/** One player's session, and the thread that runs it */
+	class Session extends MudSession implements Runnable {
+		final Socket socket;
+		final ReentrantLock writing = new ReentrantLock();   // Guards the output
+		OutputStream out;
+
+		Session(Socket socket) {
+			super(MudSessionListener.this.server);
+			this.socket = socket;
+		}
+
+		/** Read lines and carry them out until the player goes */
+		public void run() {
+			try {
+				InputStream in = socket.getInputStream();
+				out = new BufferedOutputStream(socket.getOutputStream());
+				start();
+				MudTelnet.Lines typed = new MudTelnet.Lines();
+				byte[] buffer = new byte[256];
+				while (!closed) {
+					int n = in.read(buffer);
+					if (n < 0) break;
+					for (int i=0; i<n && !closed; i++) {
+						String line = typed.add(buffer[i]);
+						if (line != null) handle(line);
+					}
+				}
+			}
+			catch (IOException e) {}   // The connection failed
+			finally {
+				leave();
+				disconnect();
+			}
+		}
+
+		/** Write text to the player.  Return false if the connection has failed. */
+		boolean write(byte[] bytes) {
+			writing.lock();
+			try {
+				out.write(bytes);
+				out.flush();
+				return true;
+			}
+			catch (IOException e) {
+				disconnect();
+				return false;
+			}
+			finally { writing.unlock(); }
+		}
+
+		/** Write several messages to the player, and send them together */
+		boolean write(MudMessage[] messages) {
+			writing.lock();
+			try {
+				for (int i=0; i<messages.length; i++) out.write(messages[i].line());
+				out.flush();
+				return true;
+			}
+			catch (IOException e) {
+				disconnect();
+				return false;
+			}
+			finally { writing.unlock(); }
+		}
+
+		/** Close the connection.  Whatever has been written has been sent. */
+		void disconnect() {
+			try { socket.close(); }
+			catch (IOException e) {}
+		}
+	}
+}
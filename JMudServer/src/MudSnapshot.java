@@ -0,0 +1,153 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A MudSnapshot is a point-in-time copy of the state of a MUD that can be
+ * written to a save file while the MUD carries on changing.  Capturing one
+ * takes the server's world lock for just long enough to copy the table of
+ * places and, for each place, a reference to its tables of exits and
+ * things.  Those tables are copy-on-write (a change to a place makes a new
+ * table rather than altering the old one), so the references are all the
+ * copying that is needed, and the snapshot costs a few pointer copies per
+ * place rather than a copy of the world.
+ *
+ * Snapshots are written by a single background thread, either in the
+ * format of a save file or as a MudWorldFile, and either can be loaded the
+ * way a save file is.  While
+ * the background thread is serializing the MUD, MudServer and MudPlace
+ * write the captured state rather than their live state.  How long the
+ * capture and the write took, and how big the file is, are reported when
+ * the write is done.
+ **/
+public class MudSnapshot {
+	/** The snapshot being written by the current thread, if any */
+	static final ThreadLocal<MudSnapshot> writing = new ThreadLocal<MudSnapshot>();
+
+	/** The thread that writes snapshots, and runs automatic snapshots */
+	static final ScheduledExecutorService writer =
+		Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "jmud-snapshot");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+	final MudServer server;             // The MUD this is a snapshot of
+	final Hashtable places;             // Its places, as they were
+	final HashSet<String> departed;     // The places it had moved elsewhere
+	final IdentityHashMap<MudPlace, LinkedHashMap<String,Object>> exits =
+		new IdentityHashMap<MudPlace, LinkedHashMap<String,Object>>();
+	final IdentityHashMap<MudPlace, LinkedHashMap<String,MudText>> things =
+		new IdentityHashMap<MudPlace, LinkedHashMap<String,MudText>>();
+	final long captureMillis;           // How long the capture took
+	long writeMillis;                   // How long the write took
+	long bytes;                         // How big the file is
+
+	/**
+	 * Capture the state of the MUD.  The caller must hold the server's world
+	 * lock for writing, so that no change is half made.
+	 **/
+	MudSnapshot(MudServer server) {
+		long start = System.nanoTime();
+		this.server = server;
+		this.places = (Hashtable) server.places.clone();
+		synchronized(server.departed) { departed = new HashSet<String>(server.departed); }
+		for (Iterator i = places.values().iterator(); i.hasNext(); ) {
+			MudPlace p = (MudPlace) i.next();
+			long stamp = p.lock.readLock();
+			try {
+				exits.put(p, p.exits);
+				things.put(p, p.things);
+			}
+			finally { p.lock.unlockRead(stamp); }
+		}
+		captureMillis = (System.nanoTime() - start) / 1000000;
+	}
+
+	/** Capture the state of the MUD, taking the world lock to do it */
+	public static MudSnapshot capture(MudServer server) {
+		server.world.writeLock().lock();
+		try { return new MudSnapshot(server); }
+		finally { server.world.writeLock().unlock(); }
+	}
+
+	/** Return the snapshot being written by this thread, or null */
+	static MudSnapshot current() { return writing.get(); }
+
+	/** Return true if a file with this name should be a world file */
+	static boolean isCompact(File f) { return f.getName().endsWith(".world"); }
+
+	/** Write the snapshot to a file, in the format its name calls for */
+	public void write(File f) throws IOException { write(f, isCompact(f)); }
+
+	/**
+	 * Write the snapshot to a file, as a world file if compact is true, and
+	 * otherwise as a save file.  It is written to a temporary file, forced
+	 * to disk, and renamed, so that a crash part way through leaves any
+	 * older file of the same name intact.
+	 **/
+	public void write(File f, boolean compact) throws IOException {
+		long start = System.nanoTime();
+		File tmp = new File(f.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		int count = places.size();
+		writing.set(this);
+		try {
+			if (compact) count = MudWorldFile.write(this, out);
+			else server.save(out);
+			out.getFD().sync();
+		}
+		finally {
+			writing.remove();
+			out.close();
+		}
+		if (!tmp.renameTo(f)) {
+			f.delete();
+			if (!tmp.renameTo(f)) throw new IOException("cannot replace " + f);
+		}
+		bytes = f.length();
+		writeMillis = (System.nanoTime() - start) / 1000000;
+		server.lastSnapshot = this;
+		System.out.println(" >>>> MudSnapshot: " + count + " places written to " +
+		                   f + ": captured in " + captureMillis + " ms, written in " +
+		                   writeMillis + " ms, " + bytes + " bytes");
+	}
+
+	/**
+	 * Write the snapshot to a file on the background thread, and then run
+	 * the specified task, if any.  Failures are reported on the console.
+	 **/
+	public void writeInBackground(final File f, final Runnable after) {
+		writer.execute(new Runnable() {
+			public void run() {
+				try {
+					write(f);
+					if (after != null) after.run();
+				}
+				catch (Throwable e) {   // Such as running out of stack on a deep MUD
+					System.out.println(" >>>> MudSnapshot: cannot write " + f + ": " + e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Take a snapshot of the MUD every so many seconds, and write it to the
+	 * specified file.
+	 **/
+	public static void every(final MudServer server, final File f, long seconds) {
+		writer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					if (!isCompact(f)) server.loadAll();
+					capture(server).write(f);
+				}
+				catch (Throwable e) {
+					System.out.println(" >>>> MudSnapshot: cannot write " + f + ": " + e);
+				}
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,278 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.*;
+
+/**
+ * MudStats keeps the numbers that show how a MudServer is doing.  Every
+ * method of RemoteMudPlace and RemoteMudServer counts its calls, times
+ * them in a MudHistogram, and counts the exceptions it throws by type:
+ * NoSuchThing, NotThere, RemoteException and so on.  Calls the server makes
+ * to itself, such as go() calling exit() and enter(), are counted too.
+ * Each method is an Op, and its body is a Call that time() runs, so the
+ * timing and counting is done here, once, for all of them.  A method too
+ * quick to be worth timing just has its calls counted.
+ * Alongside the counts are gauges that are read when asked for: how many
+ * places there are, who is in them, and how busy the broadcaster is.
+ *
+ * register() publishes them all as JMX MXBeans: the gauges under
+ * jmud:type=Server,name=<mud>, and each method under
+ * jmud:type=Operation,mud=<mud>,name=<method>, so they can be watched with
+ * jconsole or any other JMX client.  every() also writes them to a file
+ * periodically.
+ **/
+public class MudStats implements MudStatsMXBean {
+	/**
+	 * The operations that are counted: the remote methods of RemoteMudPlace
+	 * and RemoteMudServer.  Each is reported under the name of its method,
+	 * which is its own name in camel case.
+	 **/
+	enum Op {
+		GET_PLACE_NAME, GET_DESCRIPTION, GET_NAMES, GET_THINGS, GET_EXITS,
+		LOOK, GET_PERSON, EXAMINE_THING, GO, GO_AND_LOOK, SPEAK, ACT,
+		CREATE_THING, DESTROY_THING, CREATE_PLACE, LINK_TO, CLOSE, EXIT,
+		ENTER, GET_SERVER,
+		GET_MUD_NAME, GET_ENTRANCE, GET_NAMED_PLACE, LOGIN, DUMP,
+		MOVE_ZONE, ACCEPT_ZONE, EXECUTE, SHOUT,
+		TRAVEL, FIND, GET_PROMPTS;
+
+		/** Return the name of the method, such as "getPlaceName" */
+		String method() {
+			StringBuilder b = new StringBuilder();
+			String[] words = name().toLowerCase(Locale.ROOT).split("_");
+			b.append(words[0]);
+			for (int i=1; i<words.length; i++)
+				b.append(Character.toUpperCase(words[i].charAt(0))).append(words[i].substring(1));
+			return b.toString();
+		}
+	}
+
+	/**
+	 * The body of a remote method, for time() to run.  The call() of each
+	 * Call declares the exceptions its method does, and time() throws them
+	 * on unchanged, so the method needn't catch them again.
+	 **/
+	interface Call<T> {
+		T call() throws Exception;
+	}
+
+	final MudServer server;                  // The server being watched
+	final Operation[] operations = new Operation[Op.values().length];
+
+	MudStats(MudServer server) {
+		this.server = server;
+		for (Op op : Op.values()) operations[op.ordinal()] = new Operation(op.method());
+	}
+
+	/** Count a call to an operation too quick to be worth timing */
+	void count(Op op) {
+		operations[op.ordinal()].calls.incrementAndGet();
+	}
+
+	/**
+	 * Run the body of an operation, and return what it returns.  Time it,
+	 * and count whatever it throws, which is thrown on as it was.
+	 **/
+	<T> T time(Op op, Call<T> call) {
+		Operation o = operations[op.ordinal()];
+		long began = System.nanoTime();
+		try { return call.call(); }
+		catch (Throwable e) {
+			failed(o, e);
+			throw MudStats.<RuntimeException>rethrow(e);
+		}
+		finally { o.latency.record(System.nanoTime() - began); }
+	}
+
+	/**
+	 * Throw an exception that the compiler can't tell is checked.  time()
+	 * uses this to throw on what a Call threw, which its method declares.
+	 **/
+	@SuppressWarnings("unchecked")
+	private static <E extends Throwable> E rethrow(Throwable e) throws E {
+		throw (E) e;
+	}
+
+	/** Count an exception thrown by an operation */
+	private void failed(Operation o, Throwable e) {
+		o.errors.incrementAndGet();
+		String type = e.getClass().getSimpleName();
+		AtomicLong n = o.byType.get(type);
+		if (n == null) {
+			AtomicLong first = o.byType.putIfAbsent(type, n = new AtomicLong());
+			if (first != null) n = first;
+		}
+		n.incrementAndGet();
+	}
+
+	/** Publish the gauges and every operation with the platform MBean server */
+	public void register() throws JMException {
+		MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+		String mud = ObjectName.quote(server.mudname);
+		mbeans.registerMBean(this, new ObjectName("jmud:type=Server,name=" + mud));
+		for (int i=0; i<operations.length; i++)
+			mbeans.registerMBean(operations[i], new ObjectName(
+				"jmud:type=Operation,mud=" + mud + ",name=" + operations[i].name));
+	}
+
+	/** Append a report to the specified file every so many seconds */
+	public void every(final File f, long seconds) {
+		ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(
+		                                      new MudBroadcaster.WorkerFactory("jmud-stats-"));
+		writer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					Writer out = new FileWriter(f, true);
+					try { out.write(report()); }
+					finally { out.close(); }
+				}
+				catch (Throwable e) {
+					System.out.println(" >>>> MudStats: cannot write " + f + ": " + e);
+				}
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	/** Return the gauges, and the operations that have been called, as text */
+	public String report() {
+		StringBuilder b = new StringBuilder();
+		b.append("==== ").append(server.mudname).append(" at ").append(new Date()).append('\n');
+		b.append("places ").append(getPlaces()).append(", loaded ").append(getLoadedPlaces())
+		 .append(", descriptions ").append(getDescriptions())
+		 .append(", people ").append(getPeople())
+		 .append(", broadcast queue ").append(getBroadcastQueueDepth())
+		 .append(", in flight ").append(getBroadcastsInFlight())
+		 .append(", dropped ").append(getBroadcastsDropped())
+		 .append(", timers ").append(getTimers())
+		 .append(String.format(", tick lag p99 %.1f max %.1f us%n",
+		                       getTickLagP99Micros(), getTickLagMaxMicros()));
+		b.append(String.format("%-15s %10s %8s %10s %10s %10s %10s %10s  %s%n",
+		                       "operation", "calls", "errors", "mean", "p50", "p99",
+		                       "p99.9", "max", "(microseconds)"));
+		for (int i=0; i<operations.length; i++) {
+			Operation o = operations[i];
+			if (o.getCalls() == 0 && o.getErrors() == 0) continue;
+			b.append(String.format("%-15s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f  %s%n",
+			                       o.name, o.getCalls(), o.getErrors(), o.getMeanMicros(),
+			                       o.getP50Micros(), o.getP99Micros(), o.getP999Micros(),
+			                       o.getMaxMicros(), o.getErrorsByType()));
+		}
+		return b.toString();
+	}
+
+	public String getMudName() { return server.mudname; }
+
+	/** Return how many places there are, counting those not loaded yet */
+	public int getPlaces() {
+		MudWorldFile w = server.mapped;
+		return server.places.size() + ((w == null) ? 0 : w.places - w.loaded);
+	}
+
+	/** Return how many places are loaded */
+	public int getLoadedPlaces() { return server.places.size(); }
+
+	/**
+	 * Return how many different descriptions are held, by every MUD in this
+	 * process, since they share them
+	 **/
+	public int getDescriptions() { return MudDescriptions.size(); }
+
+	/** Return how many people there are in all the places */
+	public int getPeople() {
+		int n = 0;
+		for (Integer i : getPeoplePerPlace().values()) n += i;
+		return n;
+	}
+
+	/** Return the number of people in each place that has anybody in it */
+	public Map<String,Integer> getPeoplePerPlace() {
+		Map<String,Integer> people = new TreeMap<String,Integer>();
+		synchronized(server.places) {
+			for (Iterator i = server.places.values().iterator(); i.hasNext(); ) {
+				MudPlace p = (MudPlace) i.next();
+				int n = p.countPeople();
+				if (n > 0) people.put(p.placename, n);
+			}
+		}
+		return people;
+	}
+
+	/** Return how many messages are waiting to be broadcast */
+	public int getBroadcastQueueDepth() {
+		MudBroadcaster b = server.broadcaster;
+		return (b == null) ? 0 : b.getPending();
+	}
+
+	/** Return how many tell() calls are in progress */
+	public int getBroadcastsInFlight() {
+		MudBroadcaster b = server.broadcaster;
+		return (b == null) ? 0 : b.getInFlight();
+	}
+
+	/** Return how many messages the broadcaster has had to drop */
+	public long getBroadcastsDropped() {
+		MudBroadcaster b = server.broadcaster;
+		return (b == null) ? 0 : b.getDropped();
+	}
+
+	/** Return how many timers are waiting to run */
+	public int getTimers() {
+		MudScheduler s = server.scheduler;
+		return (s == null) ? 0 : s.getPending();
+	}
+
+	/** Return the 99th percentile of how late ticks of the clock have run */
+	public double getTickLagP99Micros() {
+		MudScheduler s = server.scheduler;
+		return (s == null) ? 0 : s.lag.getPercentile(99);
+	}
+
+	/** Return the latest any tick of the clock has run */
+	public double getTickLagMaxMicros() {
+		MudScheduler s = server.scheduler;
+		return (s == null) ? 0 : s.lag.getMax();
+	}
+
+	/** Start counting every operation afresh */
+	public void resetOperations() {
+		for (int i=0; i<operations.length; i++) operations[i].reset();
+	}
+
+	/** The numbers kept for one operation */
+	static class Operation implements MudOperationMXBean {
+		final String name;
+		final AtomicLong calls = new AtomicLong();    // Calls that weren't timed
+		final AtomicLong errors = new AtomicLong();
+		final ConcurrentHashMap<String,AtomicLong> byType =
+			new ConcurrentHashMap<String,AtomicLong>();
+		final MudHistogram latency = new MudHistogram();   // Nanoseconds
+
+		Operation(String name) { this.name = name; }
+
+		public long getCalls() { return calls.get() + latency.getCount(); }
+		public long getErrors() { return errors.get(); }
+
+		public Map<String,Long> getErrorsByType() {
+			Map<String,Long> m = new TreeMap<String,Long>();
+			for (Map.Entry<String,AtomicLong> e : byType.entrySet())
+				m.put(e.getKey(), e.getValue().get());
+			return m;
+		}
+
+		public double getMeanMicros() { return latency.getMean() / 1000; }
+		public double getP50Micros() { return latency.getPercentile(50) / 1000.0; }
+		public double getP90Micros() { return latency.getPercentile(90) / 1000.0; }
+		public double getP99Micros() { return latency.getPercentile(99) / 1000.0; }
+		public double getP999Micros() { return latency.getPercentile(99.9) / 1000.0; }
+		public double getMaxMicros() { return latency.getMax() / 1000.0; }
+
+		public void reset() {
+			calls.set(0);
+			errors.set(0);
+			byType.clear();
+			latency.reset();
+		}
+	}
+}
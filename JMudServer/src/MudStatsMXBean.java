@@ -0,0 +1,45 @@
+import java.util.Map;
+
+/**
+ * The gauges of a MudServer, as JMX sees them.  See MudStats.
+ **/
+public interface MudStatsMXBean {
+	/** The name of the MUD */
+	String getMudName();
+
+	/** How many places there are, counting those not loaded yet */
+	int getPlaces();
+
+	/** How many places have been loaded */
+	int getLoadedPlaces();
+
+	/** How many different descriptions of places and things are held */
+	int getDescriptions();
+
+	/** How many people there are in all the places */
+	int getPeople();
+
+	/** The number of people in each place that has anybody in it */
+	Map<String,Integer> getPeoplePerPlace();
+
+	/** How many messages are waiting to be broadcast */
+	int getBroadcastQueueDepth();
+
+	/** How many tell() calls are in progress */
+	int getBroadcastsInFlight();
+
+	/** How many messages the broadcaster has had to drop */
+	long getBroadcastsDropped();
+
+	/** How many timers are waiting to run */
+	int getTimers();
+
+	/** The 99th percentile of how late ticks of the clock have run, in microseconds */
+	double getTickLagP99Micros();
+
+	/** The latest any tick of the clock has run, in microseconds */
+	double getTickLagMaxMicros();
+
+	/** Start counting every operation afresh */
+	void resetOperations();
+}
@@ -0,0 +1,297 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A MudTelnet is a second way into a MUD, for players with nothing but a
+ * telnet client.  Each connection is a MudSession, so a player types the
+ * same commands as a MudClient user, one per line, and is sent text back.
+ * Nothing about it uses RMI, so a player needs no registry, exports no
+ * callback object, and can connect from behind NAT.
+ *
+ * All the connections share one thread, which waits on a Selector for any
+ * of them to be ready and reads or writes whatever it can without
+ * blocking.  Commands can block (building waits for the journal, and an
+ * exit may lead to another server), so complete lines are handed to a
+ * small pool of threads to be carried out, in order for each connection.
+ * Messages to a player are added to the connection's output buffer, which
+ * never blocks, and the selector thread sends them when the connection
+ * can take them.  A player whose buffer passes jmud.telnet.buffer bytes
+ * (default 65536) is disconnected, and leaves the MUD.
+ *
+ * Telnet option negotiation is ignored: the server never asks for any
+ * options, and any the client offers are dropped from the input.
+ **/
+public class MudTelnet implements Runnable {
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	static final int MAX_LINE = 4096;           // Longest line a player can type
+
+	final MudServer server;                     // The MUD this lets players into
+	final ServerSocketChannel listener;         // Accepts new connections
+	final Selector selector;                    // Finds connections ready for I/O
+	final ExecutorService commands;             // Carries out players' commands
+	final ConcurrentLinkedQueue<Connection> flushing =   // Connections with new
+		new ConcurrentLinkedQueue<Connection>();         // output to send
+	final int maxBuffer = Integer.getInteger("jmud.telnet.buffer", 65536);
+
+	/**
+	 * Listen for players on the specified port.  Commands are carried out by
+	 * jmud.telnet.threads threads (default 4).
+	 **/
+	public MudTelnet(MudServer server, int port) throws IOException {
+		this.server = server;
+		selector = Selector.open();
+		listener = ServerSocketChannel.open();
+		listener.socket().setReuseAddress(true);
+		listener.bind(new InetSocketAddress(port));
+		listener.configureBlocking(false);
+		listener.register(selector, SelectionKey.OP_ACCEPT);
+		commands = Executors.newFixedThreadPool(Integer.getInteger("jmud.telnet.threads", 4),
+		                                        new MudBroadcaster.WorkerFactory("jmud-telnet-"));
+	}
+
+	/** Start the selector thread */
+	public void start() {
+		Thread t = new Thread(this, "jmud-telnet");
+		t.setDaemon(true);
+		t.start();
+		System.out.println(" >>>> MudTelnet: listening on port " +
+		                   listener.socket().getLocalPort());
+	}
+
+	/**
+	 * The body of the selector thread.  Accept new players, read what they
+	 * type, and send them what is waiting in their buffers.
+	 **/
+	public void run() {
+		ByteBuffer in = ByteBuffer.allocate(8192);   // Shared by every connection
+		for (;;) {
+			try {
+				selector.select();
+				// Start watching connections that have something to send
+				for (Connection c; (c = flushing.poll()) != null; ) c.watchWrites();
+				for (Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext(); ) {
+					SelectionKey key = i.next();
+					i.remove();
+					if (!key.isValid()) continue;
+					if (key.isAcceptable()) accept();
+					else {
+						Connection c = (Connection) key.attachment();
+						if (key.isReadable()) c.read(in);
+						if (key.isValid() && key.isWritable()) c.send();
+					}
+				}
+			}
+			catch (ClosedSelectorException e) { return; }
+			catch (IOException e) {
+				System.out.println(" >>>> MudTelnet: " + e);
+			}
+		}
+	}
+
+	/** Accept a new connection, and start a session on it */
+	private void accept() throws IOException {
+		SocketChannel channel = listener.accept();
+		if (channel == null) return;
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		final Connection c = new Connection(channel);
+		c.key = channel.register(selector, SelectionKey.OP_READ, c);
+		c.running = true;
+		commands.execute(new Runnable() { public void run() { c.start(); c.run(); } });
+	}
+
+	/**
+	 * One player's connection.  It is a MudSession, so the MUD sends the
+	 * player's messages straight to its buffer.
+	 **/
+	class Connection extends MudSession implements Runnable {
+		final SocketChannel channel;
+		SelectionKey key;
+		final Lines typed = new Lines();  // Turns what arrives into lines
+		final ArrayDeque<String> lines = new ArrayDeque<String>();  // Typed, waiting
+		boolean running;                  // Is a thread carrying out commands?
+		boolean gone;                     // Has the connection been lost?
+		ByteBuffer out = ByteBuffer.allocate(1024);   // Waiting to be sent
+		boolean queued;                   // Is this in the flushing queue?
+		boolean closing;                  // Close once the buffer is empty?
+
+		Connection(SocketChannel channel) {
+			super(MudTelnet.this.server);
+			this.channel = channel;
+		}
+
+		/**
+		 * Read whatever has arrived, strip out telnet commands, and hand any
+		 * complete lines to the command threads.  Called by the selector
+		 * thread.
+		 **/
+		void read(ByteBuffer in) {
+			int n;
+			in.clear();
+			try { n = channel.read(in); }
+			catch (IOException e) { n = -1; }
+			if (n < 0) { close(); return; }
+			boolean added = false;
+			for (int i=0; i<n; i++) {
+				String s = typed.add(in.get(i));
+				if (s == null) continue;
+				synchronized(this) { lines.addLast(s); }
+				added = true;
+			}
+			if (added) wake();
+		}
+
+		/** Make sure a command thread is working on this connection */
+		private void wake() {
+			synchronized(this) {
+				if (running) return;
+				running = true;
+			}
+			commands.execute(this);
+		}
+
+		/**
+		 * Carry out the lines that have been typed, one at a time.  Once the
+		 * connection has been lost, take the player out of the MUD.
+		 **/
+		public void run() {
+			for (;;) {
+				String s;
+				boolean leaving;
+				synchronized(this) {
+					s = lines.pollFirst();
+					leaving = (s == null) && gone;
+					if (s == null && !gone) { running = false; return; }
+				}
+				if (leaving) { leave(); return; }
+				handle(s);
+			}
+		}
+
+		/**
+		 * Add text to the buffer, and ask the selector thread to send it.
+		 * Return false if the connection is closing or the buffer is full.
+		 **/
+		boolean write(byte[] bytes) {
+			synchronized(this) {
+				if (closing) return false;
+				if (out.remaining() < bytes.length) {
+					int needed = out.position() + bytes.length;
+					if (needed > maxBuffer) {
+						// Too far behind: let the player go
+						closing = true;
+						gone = true;
+						out.clear();
+						queued = true;
+						flushing.add(this);
+						selector.wakeup();
+						return false;
+					}
+					int size = out.capacity();
+					while (size < needed) size *= 2;
+					ByteBuffer bigger = ByteBuffer.allocate(Math.min(size, maxBuffer));
+					out.flip();
+					bigger.put(out);
+					out = bigger;
+				}
+				out.put(bytes);
+				if (queued) return true;
+				queued = true;
+			}
+			flushing.add(this);
+			selector.wakeup();
+			return true;
+		}
+
+		/** Close the connection once everything in the buffer has been sent */
+		void disconnect() {
+			synchronized(this) {
+				closing = true;
+				if (queued) return;
+				queued = true;
+			}
+			flushing.add(this);
+			selector.wakeup();
+		}
+
+		/** Called by the selector thread to start sending the buffer */
+		void watchWrites() {
+			synchronized(this) { queued = false; }
+			if (key.isValid()) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+		}
+
+		/** Send as much of the buffer as the connection will take */
+		void send() {
+			boolean close;
+			synchronized(this) {
+				out.flip();
+				try {
+					channel.write(out);
+					out.compact();
+					if (out.position() > 0) return;
+					key.interestOps(SelectionKey.OP_READ);
+					close = closing;
+				}
+				catch (IOException e) {
+					// The connection has failed, so what is left can never be sent
+					out.clear();
+					close = closing = true;
+				}
+			}
+			if (close) close();
+		}
+
+		/**
+		 * Close the connection, because the player hung up or quit, or it
+		 * failed.  If the player is still in the MUD, they leave.
+		 **/
+		private void close() {
+			key.cancel();
+			try { channel.close(); }
+			catch (IOException e) {}
+			synchronized(this) { gone = true; }
+			wake();
+		}
+	}
+
+	/**
+	 * Assembles the bytes a telnet client sends into lines of text, dropping
+	 * the telnet commands mixed in with them.  Lines end with a newline, with
+	 * or without a carriage return, and are cut off at MAX_LINE bytes.
+	 **/
+	static class Lines {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();  // So far
+		int iac;                          // Where we are in a telnet command
+
+		/** Add a byte, and return the line it completes, if it does */
+		String add(byte c) {
+			int b = c & 0xff;
+			switch (iac) {
+			case 0:                             // Plain text
+				if (b == 255) iac = 1;
+				else if (b == '\n') {
+					String s = new String(line.toByteArray(), UTF8);
+					line.reset();
+					return s;
+				}
+				else if (b != '\r' && b != 0 && line.size() < MAX_LINE) line.write(b);
+				break;
+			case 1:                             // After IAC
+				if (b == 255) { line.write(b); iac = 0; }       // An escaped 255
+				else if (b == 250) iac = 3;                      // Subnegotiation
+				else if (b >= 251) iac = 2;                      // WILL, WONT, DO, DONT
+				else iac = 0;
+				break;
+			case 2: iac = 0; break;             // The option being negotiated
+			case 3: if (b == 255) iac = 4; break;                // Until IAC SE
+			case 4: iac = (b == 240) ? 0 : 3; break;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A MudText is a description of a place or a thing, as MudDescriptions
+ * keeps it: in UTF-8, which takes one byte for each character of the plain
+ * text builders mostly write, where a String on Java 8 takes two.  It is
+ * decoded whenever somebody asks for it.  The last copy decoded is kept,
+ * but only weakly, so that a MudText that is looked at over and over, or
+ * written to a save file by every place that shares it, is decoded once
+ * while that lasts, and the save file stores it once.  A MudText never
+ * changes once it has been made.
+ **/
+public final class MudText {
+	final byte[] utf;          // The text, in UTF-8
+	final int hash;            // The hash code of those bytes
+	private volatile WeakReference<String> decoded;  // The text, while it is in use
+
+	MudText(String text) {
+		utf = text.getBytes(StandardCharsets.UTF_8);
+		hash = Arrays.hashCode(utf);
+	}
+
+	/** Return the text */
+	public String toString() {
+		WeakReference<String> r = decoded;
+		String s = (r == null) ? null : r.get();
+		// Two threads may both decode it at first, which does no harm
+		if (s == null) decoded = new WeakReference<String>(s = new String(utf, StandardCharsets.UTF_8));
+		return s;
+	}
+
+	/** Return the text of a MudText that may be null */
+	static String text(MudText t) { return (t == null) ? null : t.toString(); }
+
+	/** Return a table of things with the text of each of their descriptions */
+	static LinkedHashMap<String,String> texts(Map<String,MudText> things) {
+		LinkedHashMap<String,String> t = new LinkedHashMap<String,String>();
+		for (Map.Entry<String,MudText> e : things.entrySet()) t.put(e.getKey(), text(e.getValue()));
+		return t;
+	}
+
+	public boolean equals(Object o) {
+		return (o instanceof MudText) && Arrays.equals(utf, ((MudText) o).utf);
+	}
+
+	public int hashCode() { return hash; }
+}
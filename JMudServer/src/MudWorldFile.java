@@ -0,0 +1,377 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A MudWorldFile is a MUD saved in a compact binary format that can be
+ * opened without reading it.  Loading a save file written by dump() means
+ * inflating and deserializing every place in the MUD, and exporting each
+ * one as a remote object, before the server can be registered; for a big
+ * world that takes minutes.  A world file is instead mapped into memory,
+ * and a place is only built from it the first time someone asks for it by
+ * name or walks into it, so the server can start taking clients at once.
+ *
+ * The file is a header followed by five tables, all big-endian:
+ *   header     magic, version, the number of strings, places, exits and
+ *              things, the entrance, and the MUD's name and password
+ *   strings    the offset in the file of each string
+ *   places     name, description, first exit, exit count, first thing,
+ *              thing count for each place, sorted by name
+ *   exits      name and destination of each exit.  A destination of zero
+ *              or more is a place in this file; a negative one, -(s+1),
+ *              is string s, naming a place on another server
+ *   things     name and description of each thing
+ *   text       each string, as its length and its UTF-8 bytes
+ * Every string is stored once however many times it is used.  The places
+ * are sorted by name so that a place can be found by a binary search.
+ *
+ * An exit that leads to a place which hasn't been built yet holds a Ref,
+ * which builds the place when someone goes through the exit.  Places are
+ * only removed from a MUD when their zone moves to another server, and
+ * the server then remembers not to build them again, so once a place has
+ * been built the file is never consulted about it again, and the file
+ * never changes while it is open.
+ **/
+public class MudWorldFile {
+	static final int MAGIC = 0x4a4d5544;       // "JMUD"
+	static final int VERSION = 1;
+	static final int HEADER = 9 * 4;           // Bytes in the header
+	static final int PLACE = 6 * 4;            // Bytes in a place record
+	static final int PAIR = 2 * 4;             // Bytes in an exit or thing record
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	final File file;                 // The file this was read from
+	final ByteBuffer map;            // The file, mapped into memory
+	final int strings, places, exits, things;   // How many of each there are
+	final int entrance;              // The index of the entrance
+	final int placeTable, exitTable, thingTable;  // Where the tables start
+	final AtomicReferenceArray<MudPlace> built;   // The places built so far
+	volatile int loaded;             // How many have been built
+	MudServer server;                // The MUD being loaded from this file
+
+	/** Map a world file into memory, and check its header */
+	MudWorldFile(File file) throws IOException {
+		this.file = file;
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(file + " is too big to map");
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally { channel.close(); }   // The mapping outlives the channel
+		if (map.limit() < HEADER || map.getInt(0) != MAGIC)
+			throw new IOException(file + " is not a world file");
+		if (map.getInt(4) != VERSION)
+			throw new IOException(file + " is world file version " + map.getInt(4));
+		strings = map.getInt(8);
+		places = map.getInt(12);
+		exits = map.getInt(16);
+		things = map.getInt(20);
+		entrance = map.getInt(24);
+		placeTable = HEADER + 4*strings;
+		exitTable = placeTable + PLACE*places;
+		thingTable = exitTable + PAIR*exits;
+		if (thingTable + PAIR*things > map.limit())
+			throw new IOException(file + " is truncated");
+		built = new AtomicReferenceArray<MudPlace>(places);
+	}
+
+	/** Return true if the file starts like a world file */
+	static boolean isWorldFile(File f) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(f));
+		try { return in.readInt() == MAGIC; }
+		catch (EOFException e) { return false; }
+		finally { in.close(); }
+	}
+
+	/**
+	 * Open a world file as a MUD.  Only the entrance is built; every other
+	 * place is built when it is first needed.
+	 **/
+	static MudServer open(File f) throws IOException {
+		long start = System.nanoTime();
+		MudWorldFile w = new MudWorldFile(f);
+		MudServer server = new MudServer();
+		server.mudname = w.string(w.map.getInt(28));
+		server.password = w.string(w.map.getInt(32));
+		server.places = new Hashtable();
+		server.mapped = w;
+		w.server = server;
+		server.entrance = w.place(w.entrance);
+		System.out.println(" >>>> MudWorldFile: opened " + w.places + " places from " + f +
+		                   " in " + (System.nanoTime() - start) / 1000000 + " ms");
+		return server;
+	}
+
+	/** Return string number s, or null if s is negative */
+	String string(int s) {
+		if (s < 0) return null;
+		int offset = map.getInt(HEADER + 4*s);
+		byte[] bytes = new byte[map.getInt(offset)];
+		ByteBuffer b = map.duplicate();   // Has its own position, for this thread
+		b.position(offset + 4);
+		b.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/** Return the name of place number p */
+	String name(int p) { return string(map.getInt(placeTable + PLACE*p)); }
+
+	/** Return the number of the named place, or -1 if there is no such place */
+	int find(String name) {
+		int low = 0, high = places - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int c = name(mid).compareTo(name);
+			if (c < 0) low = mid + 1;
+			else if (c > 0) high = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Return place number p, building it from the file and registering it
+	 * with the server if this is the first time it has been asked for.
+	 **/
+	MudPlace place(int p) throws RemoteException {
+		MudPlace place = built.get(p);
+		if (place != null) return place;
+		synchronized(this) {
+			place = built.get(p);
+			if (place != null) return place;
+			int r = placeTable + PLACE*p;
+			String name = string(map.getInt(r));
+			place = new MudPlace(server, name, string(map.getInt(r+4)),
+			                     exits(map.getInt(r+8), map.getInt(r+12)),
+			                     things(map.getInt(r+16), map.getInt(r+20)));
+			server.places.put(name, place);
+			built.set(p, place);
+			loaded++;
+			return place;
+		}
+	}
+
+	/** Build every place that hasn't been built yet */
+	void loadAll() throws RemoteException {
+		for (int p=0; p<places; p++) place(p);
+	}
+
+	/** Read a place's exits from the file */
+	private LinkedHashMap<String,Object> exits(int first, int count) {
+		LinkedHashMap<String,Object> e = new LinkedHashMap<String,Object>();
+		for (int i=first; i<first+count; i++) {
+			int r = exitTable + PAIR*i;
+			int d = map.getInt(r+4);
+			Object destination;
+			if (d < 0) destination = string(-d - 1);
+			else if (built.get(d) != null) destination = built.get(d);
+			else destination = new Ref(this, d);
+			e.put(string(map.getInt(r)), destination);
+		}
+		return e;
+	}
+
+	/**
+	 * Return the names of place number p's exits that lead to places in
+	 * this file, and the names of those places, without building it.  Used
+	 * by MudNeighbors.
+	 **/
+	String[][] destinations(int p) {
+		int r = placeTable + PLACE*p;
+		int first = map.getInt(r+8), count = map.getInt(r+12);
+		ArrayList<String> exits = new ArrayList<String>();
+		ArrayList<String> names = new ArrayList<String>();
+		for (int i=first; i<first+count; i++) {
+			int d = map.getInt(exitTable + PAIR*i + 4);
+			if (d < 0) continue;   // On another server
+			exits.add(string(map.getInt(exitTable + PAIR*i)));
+			names.add(name(d));
+		}
+		return new String[][] { exits.toArray(new String[exits.size()]),
+		                        names.toArray(new String[names.size()]) };
+	}
+
+	/** Return the description of place number p, without building it */
+	String description(int p) { return string(map.getInt(placeTable + PLACE*p + 4)); }
+
+	/** Return the things in place number p, without building it */
+	LinkedHashMap<String,String> thingsOf(int p) {
+		int r = placeTable + PLACE*p;
+		int first = map.getInt(r+16), count = map.getInt(r+20);
+		LinkedHashMap<String,String> t = new LinkedHashMap<String,String>();
+		for (int i=first; i<first+count; i++) {
+			int x = thingTable + PAIR*i;
+			t.put(string(map.getInt(x)), string(map.getInt(x+4)));
+		}
+		return t;
+	}
+
+	/** Read a place's things from the file */
+	private LinkedHashMap<String,MudText> things(int first, int count) {
+		LinkedHashMap<String,MudText> t = new LinkedHashMap<String,MudText>();
+		for (int i=first; i<first+count; i++) {
+			int r = thingTable + PAIR*i;
+			t.put(string(map.getInt(r)), MudDescriptions.share(string(map.getInt(r+4))));
+		}
+		return t;
+	}
+
+	/**
+	 * The destination of an exit that leads to a place that hasn't been
+	 * built yet.  It is never saved as it is: whoever writes the MUD out
+	 * writes the place it stands for.
+	 **/
+	static class Ref {
+		final MudWorldFile file;   // The file the place is in
+		final int index;           // Which place it is
+		Ref(MudWorldFile file, int index) { this.file = file; this.index = index; }
+		/** Return the place, building it if need be */
+		MudPlace place() throws RemoteException { return file.place(index); }
+		/** Return the name of the place, without building it */
+		String name() { return file.name(index); }
+	}
+
+	/**
+	 * Write a snapshot of a MUD to a stream as a world file.  Places that
+	 * have been built are written as they were when the snapshot was
+	 * captured.  Places that were still unbuilt then are copied from the
+	 * world file the MUD was opened from, since they can't have changed.
+	 * Returns the number of places written.
+	 **/
+	static int write(MudSnapshot snapshot, OutputStream os) throws IOException {
+		MudServer server = snapshot.server;
+		MudWorldFile from = server.mapped;
+		// Every place, by name, with either the place or its number in the
+		// world file the MUD was loaded from
+		TreeMap<String,Object> all = new TreeMap<String,Object>();
+		for (int p=0; from != null && p<from.places; p++) all.put(from.name(p), p);
+		all.keySet().removeAll(snapshot.departed);   // Moved to other servers
+		all.putAll(snapshot.places);
+		HashMap<String,Integer> index = new HashMap<String,Integer>();
+		for (String name : all.keySet()) index.put(name, index.size());
+
+		Strings text = new Strings();
+		int[] placeRecords = new int[PLACE/4 * all.size()];
+		IntList exitRecords = new IntList(), thingRecords = new IntList();
+		int n = 0;
+		for (Map.Entry<String,Object> entry : all.entrySet()) {
+			Object o = entry.getValue();
+			int r = PLACE/4 * n++;
+			placeRecords[r] = text.add(entry.getKey());
+			placeRecords[r+2] = exitRecords.size() / 2;
+			placeRecords[r+4] = thingRecords.size() / 2;
+			if (o instanceof MudPlace) {
+				MudPlace place = (MudPlace) o;
+				LinkedHashMap<String,Object> e = snapshot.exits.get(place);
+				LinkedHashMap<String,MudText> t = snapshot.things.get(place);
+				if (e == null) { e = place.exits; t = place.things; }
+				placeRecords[r+1] = text.add(MudText.text(place.description));
+				for (Map.Entry<String,Object> x : e.entrySet()) {
+					Object d = x.getValue();
+					String there;
+					if (d instanceof String) there = null;
+					else if (d instanceof Ref) there = ((Ref) d).name();
+					else there = ((MudPlace) d).placename;
+					exitRecords.add(text.add(x.getKey()));
+					exitRecords.add((there == null) ? -text.add((String) d) - 1
+					                                : index.get(there).intValue());
+				}
+				for (Map.Entry<String,MudText> x : t.entrySet()) {
+					thingRecords.add(text.add(x.getKey()));
+					thingRecords.add(text.add(MudText.text(x.getValue())));
+				}
+			}
+			else {
+				int p = ((Integer) o).intValue();
+				int f = from.placeTable + PLACE*p;
+				placeRecords[r+1] = text.add(from.string(from.map.getInt(f+4)));
+				int first = from.map.getInt(f+8), count = from.map.getInt(f+12);
+				for (int i=first; i<first+count; i++) {
+					int x = from.exitTable + PAIR*i;
+					int d = from.map.getInt(x+4);
+					exitRecords.add(text.add(from.string(from.map.getInt(x))));
+					exitRecords.add((d < 0) ? -text.add(from.string(-d - 1)) - 1
+					                        : index.get(from.name(d)).intValue());
+				}
+				first = from.map.getInt(f+16);
+				count = from.map.getInt(f+20);
+				for (int i=first; i<first+count; i++) {
+					int x = from.thingTable + PAIR*i;
+					thingRecords.add(text.add(from.string(from.map.getInt(x))));
+					thingRecords.add(text.add(from.string(from.map.getInt(x+4))));
+				}
+			}
+			placeRecords[r+3] = exitRecords.size() / 2 - placeRecords[r+2];
+			placeRecords[r+5] = thingRecords.size() / 2 - placeRecords[r+4];
+		}
+		int mudname = text.add(server.mudname);
+		int password = (server.password == null) ? -1 : text.add(server.password);
+		int entrance = index.get(server.entrance.placename).intValue();
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 65536));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(text.size());
+		out.writeInt(all.size());
+		out.writeInt(exitRecords.size() / 2);
+		out.writeInt(thingRecords.size() / 2);
+		out.writeInt(entrance);
+		out.writeInt(mudname);
+		out.writeInt(password);
+		long offset = HEADER + 4L*text.size() + 4L*placeRecords.length +
+		              4L*exitRecords.size() + 4L*thingRecords.size();
+		for (int s=0; s<text.size(); s++) {
+			if (offset > Integer.MAX_VALUE) throw new IOException("world too big");
+			out.writeInt((int) offset);
+			offset += 4 + text.bytes(s).length;
+		}
+		for (int i=0; i<placeRecords.length; i++) out.writeInt(placeRecords[i]);
+		exitRecords.writeTo(out);
+		thingRecords.writeTo(out);
+		for (int s=0; s<text.size(); s++) {
+			byte[] b = text.bytes(s);
+			out.writeInt(b.length);
+			out.write(b);
+		}
+		out.flush();
+		return all.size();
+	}
+
+	/** The strings in a world file being written, each stored only once */
+	static class Strings {
+		final HashMap<String,Integer> numbers = new HashMap<String,Integer>();
+		final ArrayList<byte[]> encoded = new ArrayList<byte[]>();
+		/** Return the number of the string, adding it if it is new */
+		int add(String s) {
+			Integer n = numbers.get(s);
+			if (n == null) {
+				n = encoded.size();
+				numbers.put(s, n);
+				encoded.add(s.getBytes(UTF8));
+			}
+			return n.intValue();
+		}
+		int size() { return encoded.size(); }
+		byte[] bytes(int s) { return encoded.get(s); }
+	}
+
+	/** A growable array of ints, for the tables of a world file being written */
+	static class IntList {
+		int[] values = new int[1024];
+		int size;
+		void add(int v) {
+			if (size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = v;
+		}
+		int size() { return size; }
+		void writeTo(DataOutputStream out) throws IOException {
+			for (int i=0; i<size; i++) out.writeInt(values[i]);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+import java.rmi.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import jmud.*;
+
+/**
+ * MudZones is the part of a MudServer that serves some of the zones of a
+ * MUD split across several servers (see RemoteMudDirectory).  It knows the
+ * url the server is registered under and the MUD's directory, and it does
+ * three things with them:
+ *
+ * It routes: when the server is asked for a place it doesn't have, and
+ * the directory says another server serves the place's zone, the place is
+ * looked up there, through the server's MudLinks, so that getNamedPlace()
+ * and exits of the form "url@placename" find a place wherever it lives.
+ *
+ * It claims: a place can only be created in a zone this server serves, or
+ * one that nobody serves yet, which then becomes this server's.
+ *
+ * It moves zones: the places of the zone, with their things and exits,
+ * are sent to the new server, which builds them and journals them; exits
+ * here that led into the zone are pointed at the new server; and the old
+ * places are forgotten, but stay exported as forwarders, so that clients
+ * that still hold them carry on, and everybody in them is handed over to
+ * the new places.  The world is locked on both servers while the zone is
+ * copied and built, so nothing in the zone changes half way through, but
+ * not while the people in it are handed over, one call each.
+ **/
+public class MudZones {
+	final MudServer server;                // The server whose zones these are
+	final RemoteMudDirectory directory;    // Who serves every zone of the MUD
+	final String url;                      // Where the server is registered
+	final Set<String> mine =               // The zones this server serves
+		Collections.synchronizedSet(new HashSet<String>());
+	final long lockWait = Long.getLong("jmud.zone.wait", 10000);  // Milliseconds
+
+	MudZones(MudServer server, RemoteMudDirectory directory, String url) {
+		this.server = server;
+		this.directory = directory;
+		this.url = url;
+	}
+
+	/**
+	 * Claim the zones of every place this server has, and report those that
+	 * another server already serves.
+	 **/
+	void claimAll() throws RemoteException {
+		TreeSet<String> zones = new TreeSet<String>();
+		synchronized(server.places) {
+			for (Iterator i = server.places.keySet().iterator(); i.hasNext(); )
+				zones.add(MudZone.of((String) i.next()));
+		}
+		MudWorldFile w = server.mapped;
+		for (int p=0; w != null && p<w.places; p++) {
+			String name = w.name(p);
+			if (!server.departed.contains(name)) zones.add(MudZone.of(name));
+		}
+		for (String zone : zones) {
+			String owner = directory.claim(zone, url);
+			if (owner.equals(url)) mine.add(zone);
+			else System.out.println(" >>>> MudZones: zone '" + zone + "' is served by " +
+			                        owner + ", not here");
+		}
+	}
+
+	/**
+	 * Make sure the named place may be created here, claiming its zone if
+	 * nobody serves it yet.  Throws PlaceAlreadyExists if another server
+	 * serves the zone.
+	 **/
+	void claim(String placename) throws RemoteException, MudException.PlaceAlreadyExists {
+		String zone = MudZone.of(placename);
+		if (mine.contains(zone)) return;
+		if (!url.equals(directory.claim(zone, url))) throw new MudException.PlaceAlreadyExists();
+		mine.add(zone);
+	}
+
+	/**
+	 * Find a place this server doesn't have on the server that serves its
+	 * zone.  Throws NoSuchPlace if nobody else serves the zone, or if the
+	 * server that does can't be reached or hasn't got the place.
+	 **/
+	RemoteMudPlace route(String placename) throws RemoteException, MudException.NoSuchPlace {
+		String owner = directory.getOwner(MudZone.of(placename));
+		if (owner == null || owner.equals(url)) throw new MudException.NoSuchPlace();
+		try { return server.getLinks().resolve(owner, placename); }
+		catch (MudException.LinkFailed e) { throw new MudException.NoSuchPlace(); }
+	}
+
+	/**
+	 * Move a zone to the server registered under the specified url.  Throws
+	 * NoSuchPlace if this server doesn't serve the zone.  The zone that
+	 * holds the MUD's entrance stays where it is.
+	 **/
+	void move(String zone, String to, String password)
+			throws RemoteException, MudException.BadPassword, MudException.NoSuchPlace {
+		if (!url.equals(directory.getOwner(zone))) throw new MudException.NoSuchPlace();
+		if (to.equals(url)) return;
+		if (MudZone.of(server.entrance.placename).equals(zone))
+			throw new RemoteException("The zone with the entrance can't be moved");
+		RemoteMudServer target;
+		try { target = (RemoteMudServer) Naming.lookup(to); }
+		catch (Exception e) { throw new RemoteException("cannot reach " + to, e); }
+		// Every place that might have an exit into the zone has to be built
+		server.loadAll();
+		long seq = 0;
+		LinkedHashMap<MudPlace,LinkedHashMap<RemoteMudPerson,String>> leaving =
+			new LinkedHashMap<MudPlace,LinkedHashMap<RemoteMudPerson,String>>();
+		server.world.writeLock().lock();
+		try {
+			// Gather up the zone's places, and everything in them
+			ArrayList<MudPlace> all = new ArrayList<MudPlace>();
+			ArrayList<MudPlace> moving = new ArrayList<MudPlace>();
+			synchronized(server.places) {
+				for (Iterator i = server.places.values().iterator(); i.hasNext(); ) {
+					MudPlace p = (MudPlace) i.next();
+					if (MudZone.of(p.placename).equals(zone)) moving.add(p);
+					else all.add(p);
+				}
+			}
+			if (moving.isEmpty()) throw new MudException.NoSuchPlace();
+			MudZone image = new MudZone(zone, url);
+			for (MudPlace p : moving) {
+				LinkedHashMap<String,String> exits = new LinkedHashMap<String,String>();
+				for (Map.Entry<String,Object> e : p.exits.entrySet()) {
+					String there = nameOf(e.getValue());
+					if (there != null && !MudZone.of(there).equals(zone)) there = url + '@' + there;
+					exits.put(e.getKey(), (there == null) ? (String) e.getValue() : there);
+				}
+				image.add(p.placename, MudText.text(p.description), MudText.texts(p.things), exits);
+			}
+			// Have the new server build them, and tell the directory
+			Hashtable built;
+			try { built = target.acceptZone(password, image); }
+			catch (MudException.PlaceAlreadyExists e) {
+				throw new RemoteException(to + " already has places in zone '" + zone + "'", e);
+			}
+			if (!directory.transfer(zone, url, to))
+				System.out.println(" >>>> MudZones: the directory had zone '" + zone +
+				                   "' served by " + directory.getOwner(zone));
+			mine.remove(zone);
+			// Point the exits that led into the zone at the new server
+			for (MudPlace p : all) {
+				for (Map.Entry<String,Object> e : p.exits.entrySet()) {
+					String there = nameOf(e.getValue());
+					if (there == null || !MudZone.of(there).equals(zone)) continue;
+					try {
+						p.removeExit(e.getKey());
+						seq = p.addExit(e.getKey(), to + '@' + there);
+					}
+					catch (MudException.MudExceptionBase x) {}  // Nobody else can change it
+				}
+			}
+			// Forget the old places, and take everybody out of them
+			for (MudPlace p : moving) {
+				p.moved = (RemoteMudPlace) built.get(p.placename);
+				seq = server.depart(p.placename);
+				leaving.put(p, p.leave());
+			}
+		}
+		finally { server.world.writeLock().unlock(); }
+		// Send them across, now that the rest of the world can go on
+		for (Map.Entry<MudPlace,LinkedHashMap<RemoteMudPerson,String>> e : leaving.entrySet())
+			e.getKey().handOver(e.getValue());
+		server.awaitDurable(seq);
+		System.out.println(" >>>> MudZones: zone '" + zone + "' moved to " + to);
+	}
+
+	/**
+	 * Build the places of a zone that another server is moving here, and
+	 * journal them, and return them by name.
+	 **/
+	Hashtable accept(MudZone zone) throws RemoteException, MudException.PlaceAlreadyExists {
+		// Two servers moving zones to each other at once would each hold
+		// their own world lock while waiting for the other's, so give up
+		// rather than wait for ever.
+		try {
+			if (!server.world.writeLock().tryLock(lockWait, TimeUnit.MILLISECONDS))
+				throw new RemoteException(server.mudname + " is too busy to take zone '" +
+				                          zone.name + "'");
+		}
+		catch (InterruptedException e) { throw new RemoteException("interrupted", e); }
+		Hashtable built = new Hashtable();
+		long seq = 0;
+		try {
+			for (String name : zone.places)
+				if (server.getPlace(name) != null) throw new MudException.PlaceAlreadyExists();
+			for (int i=0; i<zone.places.size(); i++)
+				built.put(zone.places.get(i), server.adopt(zone.places.get(i),
+				                                           zone.descriptions.get(i)));
+			for (int i=0; i<zone.places.size(); i++) {
+				MudPlace p = (MudPlace) built.get(zone.places.get(i));
+				for (Map.Entry<String,String> e : zone.things.get(i).entrySet())
+					seq = p.addThing(e.getKey(), e.getValue());
+				for (Map.Entry<String,String> e : zone.exits.get(i).entrySet()) {
+					MudPlace there = (MudPlace) built.get(e.getValue());
+					if (there != null) seq = p.addExit(e.getKey(), there);
+					else seq = p.addExit(e.getKey(), e.getValue());
+				}
+			}
+			mine.add(zone.name);
+		}
+		catch (MudException.AlreadyThere e) {}         // The places are new, so
+		catch (MudException.ExitAlreadyExists e) {}    // these can't happen
+		finally { server.world.writeLock().unlock(); }
+		server.awaitDurable(seq);
+		System.out.println(" >>>> MudZones: zone '" + zone.name + "' arrived from " +
+		                   zone.from + " with " + built.size() + " places");
+		return built;
+	}
+
+	/**
+	 * Return the name of the place an exit on this server leads to, or null
+	 * if it leads to another server.
+	 **/
+	static String nameOf(Object destination) {
+		if (destination instanceof MudPlace) return ((MudPlace) destination).placename;
+		if (destination instanceof MudWorldFile.Ref) return ((MudWorldFile.Ref) destination).name();
+		return null;
+	}
+}